@@ -15,10 +15,34 @@
  */
 package org.dynami.runtime;
 
+import org.dynami.runtime.services.FillModel;
+
 public interface IDataHandler {
 	public static final String ID = "IDataHandler";
 
 	public default String getName(){
 		return this.getClass().getSimpleName();
 	}
+
+	/**
+	 * Data handler replaying historical data, which can be driven step by step by the execution manager.
+	 * In backtest mode no replay thread is started and no sleep is performed between steps,
+	 * the execution manager invokes {@link #next()} in a loop and every message is delivered synchronously.
+	 * @see IExecutionManager#setBacktest(boolean)
+	 */
+	public static interface Replay {
+		/**
+		 * Updates DTime.Clock and publishes every book and strategy event of the next point in time.
+		 * @return false when there is no more data to replay
+		 * @throws Exception
+		 */
+		public boolean next() throws Exception;
+
+		/**
+		 * @return how orders are executed against the replayed books
+		 */
+		public default FillModel fillModel(){
+			return FillModel.IMMEDIATE;
+		}
+	}
 }
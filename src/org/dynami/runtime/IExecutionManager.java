@@ -49,6 +49,22 @@ public interface IExecutionManager {
 	 */
 	public boolean setStrategyExecutor(final Class<? extends IStrategyExecutor> engine);
 
+	/**
+	 * Enables the deterministic backtest mode: {@link #run()} drives the data handler, which must implement {@link IDataHandler.Replay},
+	 * in a single ordered loop on the caller thread. Order matching, portfolio and strategy are invoked synchronously
+	 * for every event, so the same data always produces the same results, as fast as the CPU allows.
+	 * <br>It has to be invoked before {@link #init(Config)}.
+	 * @param backtest
+	 * @return true if the mode has been set, false if the execution manager is already initialized
+	 */
+	public boolean setBacktest(boolean backtest);
+
+	/**
+	 * @return true if running in deterministic backtest mode
+	 * @see #setBacktest(boolean)
+	 */
+	public boolean isBacktest();
+
 	/**
 	 * Initialize execution manager with attribute contained interface
 	 * @param config
@@ -84,7 +100,8 @@ public interface IExecutionManager {
 	
 
 	/**
-	 * Starts strategy execution
+	 * Starts strategy execution.
+	 * In backtest mode it returns only when data are over or the execution has been paused or stopped.
 	 * <br>Refer to {@link IExecutionManager.State} for the proper sequence in invoking methods
 	 * <pre>Errors are propagated through {@link Topics.ERRORS}.<pre>
 	 * @return
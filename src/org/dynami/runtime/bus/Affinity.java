@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.bus;
+
+/**
+ * Tells which thread delivers the messages of a topic to a subscriber.
+ * <ul>
+ * <li>{@link #ENGINE} the shared broker engine thread, default for every subscription</li>
+ * <li>{@link #thread(String)} a named dispatcher thread, shared by all the subscribers using the same name</li>
+ * <li>{@link #dedicated()} a thread owned by the single subscription, stopped on unsubscribe</li>
+ * <li>{@link #INLINE} the publisher thread, within {@link Msg#async(String, Object)}</li>
+ * </ul>
+ * Subscribers bound to different threads consume the same topic independently,
+ * so a slow handler doesn't delay the others.
+ * @author Atria
+ */
+public final class Affinity {
+	public static final Affinity ENGINE = new Affinity(Kind.Engine, null);
+	public static final Affinity INLINE = new Affinity(Kind.Inline, null);
+
+	final Kind kind;
+	final String name;
+
+	private Affinity(Kind kind, String name) {
+		this.kind = kind;
+		this.name = name;
+	}
+
+	/**
+	 * @param name dispatcher name, the thread is named Msg.Broker.&lt;name&gt;
+	 */
+	public static Affinity thread(String name){
+		if(name == null || name.isEmpty()){
+			throw new IllegalArgumentException("Dispatcher name can't be empty");
+		}
+		return new Affinity(Kind.Thread, name);
+	}
+
+	public static Affinity dedicated(){
+		return new Affinity(Kind.Dedicated, null);
+	}
+
+	@Override
+	public String toString() {
+		return (name != null)?kind+"("+name+")":kind.toString();
+	}
+
+	static enum Kind {Engine, Thread, Dedicated, Inline}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.bus;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.dynami.core.bus.IMsg;
+
+/**
+ * Topic keeping, for every subscriber, only the newest undelivered message per key.
+ * A slow subscriber gets the latest state, e.g. the last book per symbol, instead of a backlog.
+ * Messages with different keys are delivered in the order their key was first updated.
+ * @author Atria
+ */
+class ConflatingTopicHandler extends TopicHandler {
+	private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+	private final Function<Object, ?> key;
+	private final LongAdder published = new LongAdder();
+	private final LongAdder conflated = new LongAdder();
+
+	ConflatingTopicHandler(String topic, Function<Object, ?> key) {
+		super(topic);
+		this.key = key;
+	}
+
+	@Override
+	boolean add(IMsg.Handler handler, Dispatcher dispatcher) {
+		for(Subscriber s : subscribers){
+			if(s.handler.equals(handler)) return false;
+		}
+		subscribers.add(new Subscriber(handler, dispatcher));
+		return true;
+	}
+
+	@Override
+	Dispatcher remove(IMsg.Handler handler) {
+		for(Subscriber s : subscribers){
+			if(s.handler.equals(handler) && subscribers.remove(s)){
+				return s.dispatcher;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	void forEachSubscriber(BiConsumer<IMsg.Handler, Dispatcher> consumer) {
+		for(Subscriber s : subscribers){
+			consumer.accept(s.handler, s.dispatcher);
+		}
+	}
+
+	@Override
+	void enqueue(Object msg, Dispatcher current) {
+		final Object k = key.apply(msg);
+		published.increment();
+		for(Subscriber s : subscribers){
+			if(s.latest.put(k, msg) == null){
+				s.dirty.offer(k);
+			} else {
+				conflated.increment();
+			}
+		}
+	}
+
+	@Override
+	int dispatch(Dispatcher dispatcher) {
+		int delivered = 0;
+		for(Subscriber s : subscribers){
+			if(s.dispatcher != dispatcher) continue;
+			Object k;
+			while((k = s.dirty.poll()) != null){
+				// a value published after remove() finds the key absent and queues it again
+				final Object msg = s.latest.remove(k);
+				if(msg == null) continue;
+				try {
+					s.handler.update(s.dirty.isEmpty(), msg);
+				} catch (Throwable e) {
+					e.printStackTrace();
+				}
+				delivered++;
+			}
+		}
+		return delivered;
+	}
+
+	@Override
+	TopicStats stats() {
+		long lag = 0;
+		for(Subscriber s : subscribers){
+			lag = Math.max(lag, s.latest.size());
+		}
+		return new TopicStats(topic, OverflowPolicy.Conflate, subscribers.size(), published.sum(), lag, 0, conflated.sum(), 0);
+	}
+
+	private static class Subscriber {
+		private final IMsg.Handler handler;
+		private final Dispatcher dispatcher;
+		private final Map<Object, Object> latest = new ConcurrentHashMap<>();
+		private final Queue<Object> dirty = new ConcurrentLinkedQueue<>();
+
+		private Subscriber(IMsg.Handler handler, Dispatcher dispatcher) {
+			this.handler = handler;
+			this.dispatcher = dispatcher;
+		}
+	}
+}
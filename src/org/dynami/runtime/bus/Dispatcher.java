@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.bus;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Thread delivering the messages of the topics scheduled on it.
+ * Every topic with pending messages for the subscribers bound to this dispatcher is queued once,
+ * when the queue is empty the dispatcher waits according to its {@link WaitStrategy}.
+ * @author Atria
+ */
+class Dispatcher extends Thread {
+	private final Queue<TopicHandler.Route> ready = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean shutdown = new AtomicBoolean(false);
+	private volatile WaitStrategy waitStrategy;
+	final boolean dedicated;
+
+	Dispatcher(String name, WaitStrategy waitStrategy, boolean dedicated) {
+		super(name);
+		this.waitStrategy = waitStrategy;
+		this.dedicated = dedicated;
+	}
+
+	/**
+	 * @return the dispatcher running on the caller thread, null if the caller isn't a dispatcher
+	 */
+	static Dispatcher current(){
+		final Thread thread = Thread.currentThread();
+		return (thread instanceof Dispatcher)?(Dispatcher)thread:null;
+	}
+
+	@Override
+	public void run() {
+		int idleCount = 0;
+		while(!shutdown.get()){
+			final TopicHandler.Route route = ready.poll();
+			if(route != null){
+				// cleared before dispatching, so messages published meanwhile reschedule the topic
+				route.scheduled.set(false);
+				route.topic.dispatch(this);
+				idleCount = 0;
+			} else {
+				try {
+					waitStrategy.idle(idleCount, ()->!ready.isEmpty() || shutdown.get());
+				} catch (InterruptedException e) {}
+				if(idleCount < Integer.MAX_VALUE) idleCount++;
+			}
+		}
+	}
+
+	void schedule(TopicHandler.Route route){
+		ready.offer(route);
+		waitStrategy.signal();
+	}
+
+	void waitStrategy(WaitStrategy waitStrategy){
+		final WaitStrategy previous = this.waitStrategy;
+		this.waitStrategy = waitStrategy;
+		previous.signal();
+	}
+
+	/**
+	 * @return false once shut down or terminated, its subscribers won't consume messages anymore
+	 */
+	boolean isRunning(){
+		return !shutdown.get() && isAlive();
+	}
+
+	void shutdown(){
+		shutdown.set(true);
+		waitStrategy.signal();
+	}
+}
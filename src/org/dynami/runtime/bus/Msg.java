@@ -18,69 +18,85 @@ package org.dynami.runtime.bus;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.dynami.core.bus.IMsg;
 
 /**
  * Message broker works as a topic/subscriber queue and allows to share messages,
  * in asynchronously and synchronously mode, between objects and threads.
+ * <br>Every topic is backed by a ring buffer. Publishing a message enqueues the topic for dispatching,
+ * so the engine thread only visits topics with pending messages and waits, according to
+ * the configured {@link WaitStrategy}, when there is nothing to deliver.
+ * <br>Subscribers can be bound to other dispatcher threads, or invoked inline, through an {@link Affinity}:
+ * independent consumers then run in parallel instead of queuing behind each other on the engine thread.
  * @author Atria
  *
  */
 public enum Msg implements IMsg {
 	Broker;
 	private boolean forceSync = false;
-	private final static int SIZE = 1024;
-	private final AtomicBoolean shutdown = new AtomicBoolean(false);
-	private final Map<String, TopicHandler> topics = new ConcurrentSkipListMap<>();
-
-	private final Thread internal = new Thread(new Runnable() {
-		@Override
-		public void run() {
-			while(!shutdown.get()){
-				topics.values().stream().forEach(th -> {
-					th.subscribers.stream().forEach((TopicSubscriber ts)->{
-						if(ts.cursor.get() < th.cursor.get()){
-							if(th.cursor.get() >= ts.cursor().get()+th._SIZE_){
-								ts.cursor.set(th.cursor.get()-th._SIZE_);
-							}
-							ts.handler.update(
-									th.cursor.get()-1== ts.cursor.get(),
-									th.buffer[ts.cursor.getAndIncrement()%th._SIZE_]);
-						}
-					});
-				});
-				try {
-					// sleep execution for a nanosecond, otherwise sometimes raises unexpected NullPointerException
-					TimeUnit.NANOSECONDS.sleep(1);
-				} catch (InterruptedException e) {}
-			}
-		}
-	}, "Msg.Broker.engine");
+	private final Map<String, TopicHandler> topics = new ConcurrentHashMap<>();
+	private final Dispatcher engine = new Dispatcher("Msg.Broker.engine", new WaitStrategy.Blocking(), false);
+	private final Map<String, Dispatcher> dispatchers = new ConcurrentHashMap<>();
+	private final Set<Dispatcher> dedicated = ConcurrentHashMap.newKeySet();
+	private final AtomicLong dedicatedCount = new AtomicLong(0);
+	private final WildcardRouter router = new WildcardRouter();
 
 	{
-		internal.start();
+		engine.start();
 	}
 
 	public void subscribe(String topic, IMsg.Handler handler){
-		topics.putIfAbsent(topic, new TopicHandler());
-		final TopicHandler h = topics.get(topic);
-		if(!h.contains(handler)){
-			h.subscribe(new TopicSubscriber(handler, h.cursor.get()));
+		subscribe(topic, handler, Affinity.ENGINE);
+	}
+
+	/**
+	 * Subscribes the handler choosing the thread its messages are delivered on.
+	 * <br>A topic ending with <code>*</code>, e.g. <code>ea/*</code>, subscribes the handler to every topic
+	 * starting with the given prefix, both existing and created later.
+	 * @param topic
+	 * @param handler
+	 * @param affinity
+	 * @see Affinity
+	 */
+	public void subscribe(String topic, IMsg.Handler handler, Affinity affinity){
+		final Dispatcher dispatcher = dispatcher(topic, affinity);
+		if(WildcardRouter.isPattern(topic)){
+			final String prefix = WildcardRouter.prefix(topic);
+			synchronized (router) {
+				router.add(prefix, handler, dispatcher);
+				topics.forEach((t, th)->{
+					if(t.startsWith(prefix)) th.subscribe(handler, dispatcher);
+				});
+			}
+		} else {
+			topic(topic).subscribe(handler, dispatcher);
 		}
 	}
 
-	@SuppressWarnings("unlikely-arg-type")
 	@Override
 	public void unsubscribe(String topic, Handler handler) {
-		TopicHandler th = topics.get(topic);
-		if(th != null) {
-			th.subscribers.remove(handler);
+		Dispatcher dispatcher = null;
+		if(WildcardRouter.isPattern(topic)){
+			final String prefix = WildcardRouter.prefix(topic);
+			synchronized (router) {
+				dispatcher = router.remove(prefix, handler);
+				topics.forEach((t, th)->{
+					if(t.startsWith(prefix)) th.unsubscribe(handler);
+				});
+			}
+		} else {
+			TopicHandler th = topics.get(topic);
+			if(th != null) {
+				dispatcher = th.unsubscribe(handler);
+			}
+		}
+		if(dispatcher != null && dispatcher.dedicated && dedicated.remove(dispatcher)){
+			dispatcher.shutdown();
 		}
 	}
 
@@ -105,19 +121,20 @@ public enum Msg implements IMsg {
 
 	public boolean async(String topic, Object msg){
 		if(forceSync) return sync(topic, msg);
-		TopicHandler topicHandler = topics.get(topic);
+		TopicHandler topicHandler = route(topic);
 		if(topicHandler == null) return false;
+		if(!topicHandler.hasSubscribers()) return true;
 
-		topicHandler.buffer(msg);
+		topicHandler.publish(msg, Dispatcher.current());
 		return true;
 	}
 
 	@Override
 	public boolean sync(String topic, Object msg) {
-		TopicHandler handler = topics.get(topic);
+		TopicHandler handler = route(topic);
 		if(handler == null) return false;
 
-		handler.subscribers.forEach(s->s.handler.update(true, msg));
+		handler.sync(msg);
 		return true;
 	}
 
@@ -126,68 +143,141 @@ public enum Msg implements IMsg {
 		this.forceSync = forceSync;
 	}
 
-	private static class TopicSubscriber {
-		private final AtomicInteger cursor = new AtomicInteger(0);
-		public final IMsg.Handler handler;
-
-		public TopicSubscriber(IMsg.Handler handler, int _cursor) {
-			this.handler = handler;
-			this.cursor.set(_cursor);
-		}
+	/**
+	 * Sets the behaviour of a topic when its slowest subscriber lags behind by the whole buffer.
+	 * @param topic
+	 * @param policy either {@link OverflowPolicy#DropOldest} or {@link OverflowPolicy#Block}
+	 */
+	public void overflowPolicy(String topic, OverflowPolicy policy) {
+		overflowPolicy(topic, policy, null);
+	}
 
-		public AtomicInteger cursor(){
-			return cursor;
+	/**
+	 * Sets the behaviour of a topic when its slowest subscriber lags behind by the whole buffer.
+	 * @param topic
+	 * @param policy
+	 * @param key extracts the conflation key from messages, required by {@link OverflowPolicy#Conflate}
+	 */
+	public void overflowPolicy(String topic, OverflowPolicy policy, Function<Object, ?> key) {
+		final TopicHandler th = topic(topic);
+		if(th instanceof RingTopicHandler){
+			((RingTopicHandler)th).overflowPolicy(policy, key);
 		}
+	}
 
-		@Override
-		public boolean equals(Object obj) {
-			if(obj instanceof IMsg.Handler){
-				return handler.equals(obj);
+	/**
+	 * Turns the topic into a conflating one: every subscriber receives only the newest undelivered message per key.
+	 * Current subscribers are kept, messages still pending on the topic are discarded,
+	 * so it should be invoked before starting publishing.
+	 * @param topic
+	 * @param key extracts the conflation key from messages, e.g. the symbol of a book update
+	 * @see ConflatingTopicHandler
+	 */
+	public void conflate(String topic, Function<Object, ?> key) {
+		topics.compute(topic, (t, th)->{
+			if(th instanceof ConflatingTopicHandler) return th;
+			final ConflatingTopicHandler conflating = new ConflatingTopicHandler(t, key);
+			if(th != null){
+				th.moveSubscribersTo(conflating);
 			} else {
-				return super.equals(obj);
+				router.forEachMatch(t, conflating::subscribe);
 			}
-		}
+			return conflating;
+		});
 	}
 
-	private static class TopicHandler {
-		private final List<TopicSubscriber> subscribers = new CopyOnWriteArrayList<>();
-		private final AtomicInteger cursor = new AtomicInteger(0);
-		public final int _SIZE_;
-		private final Object[] buffer;
-
-		public TopicHandler(int bufferSize){
-			this._SIZE_ = bufferSize;
-			buffer = new Object[bufferSize];
-		}
-
-		public TopicHandler() {
-			this(SIZE);
-		}
+	/**
+	 * @param topic
+	 * @return lag and overflow counters of the topic, null if the topic doesn't exist
+	 */
+	public TopicStats stats(String topic) {
+		final TopicHandler th = topics.get(topic);
+		return (th != null)?th.stats():null;
+	}
 
-		public void subscribe(TopicSubscriber subscriber){
-			subscribers.add(subscriber);
-		}
+	public List<TopicStats> stats() {
+		return topics.values()
+				.stream()
+				.map(TopicHandler::stats)
+				.collect(Collectors.toList());
+	}
 
-		public void buffer(Object msg){
-			buffer[cursor.getAndIncrement()%_SIZE_] = msg;
-		}
+	/**
+	 * Changes the way the engine thread waits for new messages.
+	 * @param waitStrategy
+	 * @see WaitStrategy
+	 */
+	public void waitStrategy(WaitStrategy waitStrategy) {
+		engine.waitStrategy(waitStrategy);
+	}
 
-		public boolean contains(Handler handler){
-			return subscribers
-					.stream()
-					.filter(s->s.handler.equals(handler))
-					.count() > 0;
-		}
+	/**
+	 * Changes the way a named dispatcher thread waits for new messages, creating the dispatcher if needed.
+	 * @param dispatcher name used in {@link Affinity#thread(String)}
+	 * @param waitStrategy
+	 */
+	public void waitStrategy(String dispatcher, WaitStrategy waitStrategy) {
+		dispatcher(null, Affinity.thread(dispatcher)).waitStrategy(waitStrategy);
 	}
 
 	@Override
 	public void reset() {
 		topics.clear();
+		router.clear();
+		dedicated.forEach(Dispatcher::shutdown);
+		dedicated.clear();
 	}
 
 	@Override
 	public boolean dispose() {
-		shutdown.set(true);
+		engine.shutdown();
+		dispatchers.values().forEach(Dispatcher::shutdown);
+		dedicated.forEach(Dispatcher::shutdown);
 		return true;
 	}
+
+	/**
+	 * @return the topic handler, created with the matching wildcard subscribers if it doesn't exist
+	 */
+	private TopicHandler topic(String topic){
+		return topics.computeIfAbsent(topic, t->{
+			final TopicHandler th = new RingTopicHandler(t);
+			router.forEachMatch(t, th::subscribe);
+			return th;
+		});
+	}
+
+	/**
+	 * @return the topic handler, or null if it doesn't exist and no wildcard subscriber is interested in it
+	 */
+	private TopicHandler route(String topic){
+		final TopicHandler th = topics.get(topic);
+		if(th != null || !router.matches(topic)) return th;
+		return topic(topic);
+	}
+
+	/**
+	 * @return the dispatcher delivering messages for the given affinity, null for inline delivery
+	 */
+	private Dispatcher dispatcher(String topic, Affinity affinity){
+		switch (affinity.kind) {
+		case Inline:
+			return null;
+		case Thread:
+			return dispatchers.computeIfAbsent(affinity.name, name->{
+				final Dispatcher d = new Dispatcher("Msg.Broker."+name, new WaitStrategy.Blocking(), false);
+				d.setDaemon(true);
+				d.start();
+				return d;
+			});
+		case Dedicated:
+			final Dispatcher d = new Dispatcher("Msg.Broker."+topic+"#"+dedicatedCount.incrementAndGet(), new WaitStrategy.Blocking(), true);
+			d.setDaemon(true);
+			dedicated.add(d);
+			d.start();
+			return d;
+		default:
+			return engine;
+		}
+	}
 }
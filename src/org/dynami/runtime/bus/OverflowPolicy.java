@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.bus;
+
+/**
+ * Describes what happens when a producer publishes on a topic whose buffer is full,
+ * because at least one subscriber is lagging behind by the whole buffer size.
+ * @author Atria
+ */
+public enum OverflowPolicy {
+	/**
+	 * The oldest messages are overwritten, lagging subscribers skip them. Skipped messages are counted as dropped.
+	 */
+	DropOldest,
+	/**
+	 * The producer waits until the slowest subscriber frees a slot.
+	 * When the producer is the dispatcher itself, it delivers the pending messages inline instead of waiting.
+	 */
+	Block,
+	/**
+	 * The new message replaces the pending one having the same key, e.g. the latest book per symbol.
+	 * If no pending message shares the key, the oldest one is overwritten as in {@link #DropOldest}.
+	 */
+	Conflate
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.bus;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.dynami.core.bus.IMsg;
+
+/**
+ * Ring buffer holding the messages published on a single topic.
+ * Producers claim a slot through a sequence, write the message and then publish it by moving the cursor forward.
+ * Every subscriber owns its own sequence, so no locks are involved in delivering messages.
+ * <br>When the slowest subscriber lags behind by the whole buffer, the configured {@link OverflowPolicy} applies.
+ * @author Atria
+ */
+class RingTopicHandler extends TopicHandler {
+	static final int DEFAULT_SIZE = 1024;
+	private static final long BLOCK_PARK_NANOS = 1_000L;
+	private static final int PUBLISH_SPIN_TRIES = 64;
+	private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Object[].class);
+
+	private final List<TopicSubscriber> subscribers = new CopyOnWriteArrayList<>();
+	private final Sequence claimed = new Sequence();
+	private final Sequence cursor = new Sequence();
+	private final Object[] buffer;
+	private final int size;
+	private final int mask;
+
+	private volatile OverflowPolicy policy = OverflowPolicy.DropOldest;
+	private volatile Function<Object, ?> key;
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder conflated = new LongAdder();
+	private final LongAdder stalls = new LongAdder();
+
+	RingTopicHandler(String topic, int bufferSize){
+		super(topic);
+		this.size = ceilingPowerOfTwo(bufferSize);
+		this.mask = size-1;
+		this.buffer = new Object[size];
+	}
+
+	RingTopicHandler(String topic) {
+		this(topic, DEFAULT_SIZE);
+	}
+
+	void overflowPolicy(OverflowPolicy policy, Function<Object, ?> key){
+		if(OverflowPolicy.Conflate.equals(policy) && key == null){
+			throw new IllegalArgumentException("Conflate policy requires a key extractor for topic "+topic);
+		}
+		this.key = key;
+		this.policy = policy;
+	}
+
+	@Override
+	boolean add(IMsg.Handler handler, Dispatcher dispatcher){
+		if(contains(handler)) return false;
+		subscribers.add(new TopicSubscriber(handler, dispatcher, cursor.get()));
+		return true;
+	}
+
+	@Override
+	Dispatcher remove(IMsg.Handler handler){
+		for(TopicSubscriber s : subscribers){
+			if(s.handler.equals(handler) && subscribers.remove(s)){
+				return s.dispatcher;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	void forEachSubscriber(BiConsumer<IMsg.Handler, Dispatcher> consumer){
+		for(TopicSubscriber s : subscribers){
+			consumer.accept(s.handler, s.dispatcher);
+		}
+	}
+
+	boolean contains(IMsg.Handler handler){
+		for(TopicSubscriber s : subscribers){
+			if(s.handler.equals(handler)) return true;
+		}
+		return false;
+	}
+
+	@Override
+	void enqueue(Object msg, Dispatcher current){
+		final long sequence;
+		switch (policy) {
+		case Block:
+			sequence = claim(current);
+			break;
+		case Conflate:
+			if(isFull() && conflate(msg)) return;
+			sequence = claimed.incrementAndGet();
+			break;
+		default:
+			sequence = claimed.incrementAndGet();
+			break;
+		}
+
+		SLOT.setRelease(buffer, (int)(sequence & mask), msg);
+		// concurrent producers publish in the same order they claimed
+		for(int spins = 0; cursor.get() != sequence-1; spins++){
+			if(spins < PUBLISH_SPIN_TRIES){
+				Thread.onSpinWait();
+			} else {
+				// the previous producer could have been descheduled
+				Thread.yield();
+			}
+		}
+		cursor.set(sequence);
+	}
+
+	/**
+	 * Claims the next slot only once every running subscriber has consumed the message it holds,
+	 * the check and the claim are a single compare and set so concurrent producers can't share the last free slot.
+	 * Subscribers whose dispatcher has been stopped don't hold producers back, they skip the overwritten messages.
+	 * @return the claimed sequence
+	 */
+	private long claim(Dispatcher current){
+		while(true){
+			final long last = claimed.get();
+			if(last+1-minSequence(true) <= size){
+				if(claimed.compareAndSet(last, last+1)) return last+1;
+				continue;
+			}
+			// a dispatcher makes room delivering inline to its own subscribers,
+			// when the slowest ones belong to other dispatchers it waits as any other producer
+			if(current != null && dispatch(current) > 0) continue;
+			stalls.increment();
+			LockSupport.parkNanos(BLOCK_PARK_NANOS);
+		}
+	}
+
+	/**
+	 * Delivers to the subscribers bound to the dispatcher the messages published so far.
+	 * Slow subscribers, left behind more than the buffer size, skip the overwritten messages.
+	 * @return number of delivered messages
+	 */
+	@Override
+	int dispatch(Dispatcher dispatcher){
+		final long published = cursor.get();
+		final boolean conflating = OverflowPolicy.Conflate.equals(policy);
+		int delivered = 0;
+		for(TopicSubscriber s : subscribers){
+			if(s.dispatcher != dispatcher) continue;
+			// sequence is re-read at each step, handlers may publish on a full topic and trigger a nested dispatch
+			long next;
+			while((next = s.sequence.get()+1) <= published){
+				final long overwritten = claimed.get()-size+1;
+				if(next < overwritten){
+					dropped.add(overwritten-next);
+					s.sequence.set(overwritten-1);
+					continue;
+				}
+				final Object msg;
+				if(conflating){
+					// sequence first: a conflating producer replacing the slot afterwards sees it taken, see conflate
+					s.sequence.setVolatile(next);
+					msg = SLOT.getVolatile(buffer, (int)(next & mask));
+					if(claimed.get()-next >= size){
+						dropped.increment();
+						continue;
+					}
+				} else {
+					msg = SLOT.getAcquire(buffer, (int)(next & mask));
+					// the slot could have been overwritten while reading it
+					if(claimed.get()-next >= size){
+						continue;
+					}
+					s.sequence.set(next);
+				}
+				try {
+					s.handler.update(next == cursor.get(), msg);
+				} catch (Throwable e) {
+					e.printStackTrace();
+				}
+				delivered++;
+			}
+		}
+		return delivered;
+	}
+
+	@Override
+	void sync(Object msg){
+		for(TopicSubscriber s : subscribers){
+			s.handler.update(true, msg);
+		}
+		for(IMsg.Handler h : inlineHandlers()){
+			h.update(true, msg);
+		}
+	}
+
+	@Override
+	TopicStats stats(){
+		final long published = cursor.get();
+		return new TopicStats(topic, policy, subscribers.size(), published+1, published-minSequence(false),
+				dropped.sum(), conflated.sum(), stalls.sum());
+	}
+
+	private boolean isFull(){
+		return claimed.get()+1-minSequence(false) > size;
+	}
+
+	/**
+	 * @param running only subscribers whose dispatcher is still running
+	 */
+	private long minSequence(boolean running){
+		long min = cursor.get();
+		for(TopicSubscriber s : subscribers){
+			if(running && !s.dispatcher.isRunning()) continue;
+			final long seq = s.sequence.get();
+			if(seq < min) min = seq;
+		}
+		return min;
+	}
+
+	private long maxSequence(){
+		long max = Sequence.INITIAL_VALUE;
+		for(TopicSubscriber s : subscribers){
+			final long seq = s.sequence.get();
+			if(seq > max) max = seq;
+		}
+		return max;
+	}
+
+	/**
+	 * Looks for a message with the same key, not yet delivered to any subscriber, and replaces it.
+	 * @return true if the message has been conflated, false if it has to be published
+	 */
+	private synchronized boolean conflate(Object msg){
+		final Function<Object, ?> key = this.key;
+		final Object k = key.apply(msg);
+		final long published = cursor.get();
+		final long oldest = Math.max(maxSequence()+1, published-size+1);
+		for(long seq = published; seq >= oldest; seq--){
+			final int idx = (int)(seq & mask);
+			final Object pending = SLOT.getAcquire(buffer, idx);
+			if(pending != null && k.equals(key.apply(pending))){
+				// subscribers take their sequence before reading the slot: one that reached it already
+				// gets the pending message, one that reaches it after the replacement gets the new one
+				if(maxSequence() >= seq || !SLOT.compareAndSet(buffer, idx, pending, msg)) return false;
+				if(maxSequence() < seq){
+					conflated.increment();
+					return true;
+				}
+				// a subscriber went through the slot meanwhile, the slower ones get the pending message back
+				// and the new one is published
+				SLOT.compareAndSet(buffer, idx, msg, pending);
+				return false;
+			}
+		}
+		return false;
+	}
+
+	private static int ceilingPowerOfTwo(int value){
+		if(value <= 1) return 1;
+		return Integer.highestOneBit(value-1) << 1;
+	}
+}
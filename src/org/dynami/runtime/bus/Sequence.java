@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.bus;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+abstract class SequenceLhsPadding {
+	protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+abstract class SequenceValue extends SequenceLhsPadding {
+	protected volatile long value;
+}
+
+/**
+ * Cache line padded sequence counter used by ring buffers' producers and consumers.
+ * Padding prevents false sharing between cursors updated by different threads.
+ * @author Atria
+ */
+public class Sequence extends SequenceValue {
+	public static final long INITIAL_VALUE = -1L;
+	protected long p9, p10, p11, p12, p13, p14, p15;
+
+	private static final VarHandle VALUE;
+	static {
+		try {
+			VALUE = MethodHandles.lookup().findVarHandle(SequenceValue.class, "value", long.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	public Sequence() {
+		this(INITIAL_VALUE);
+	}
+
+	public Sequence(long initial) {
+		VALUE.setRelease(this, initial);
+	}
+
+	public long get() {
+		return value;
+	}
+
+	/**
+	 * Ordered store, cheaper than a volatile write and enough for a single writer publishing its progress.
+	 */
+	public void set(long value) {
+		VALUE.setRelease(this, value);
+	}
+
+	public void setVolatile(long value) {
+		this.value = value;
+	}
+
+	public boolean compareAndSet(long expected, long value) {
+		return VALUE.compareAndSet(this, expected, value);
+	}
+
+	public long incrementAndGet() {
+		return addAndGet(1L);
+	}
+
+	public long addAndGet(long increment) {
+		return (long)VALUE.getAndAdd(this, increment) + increment;
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(get());
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.bus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import org.dynami.core.bus.IMsg;
+
+/**
+ * Holds the subscribers of a topic and the messages not yet delivered to them.
+ * Queued subscribers are bound to a {@link Dispatcher}, the topic is scheduled once on every dispatcher
+ * serving at least one of them. Inline subscribers are invoked directly on the publisher thread.
+ * @author Atria
+ * @see RingTopicHandler
+ * @see ConflatingTopicHandler
+ */
+abstract class TopicHandler {
+	final String topic;
+	private final List<IMsg.Handler> inline = new CopyOnWriteArrayList<>();
+	private final List<Route> routes = new CopyOnWriteArrayList<>();
+
+	TopicHandler(String topic) {
+		this.topic = topic;
+	}
+
+	/**
+	 * @param handler
+	 * @param dispatcher thread delivering messages to the handler, null to invoke it on the publisher thread
+	 */
+	final synchronized void subscribe(IMsg.Handler handler, Dispatcher dispatcher){
+		if(dispatcher == null){
+			if(!inline.contains(handler)) inline.add(handler);
+		} else if(add(handler, dispatcher) && !isRouted(dispatcher)){
+			routes.add(new Route(this, dispatcher));
+		}
+	}
+
+	/**
+	 * @param handler
+	 * @return the dispatcher the handler was bound to, null if it was inline or not subscribed at all
+	 */
+	final synchronized Dispatcher unsubscribe(IMsg.Handler handler){
+		if(inline.remove(handler)) return null;
+		final Dispatcher dispatcher = remove(handler);
+		if(dispatcher != null && !serves(dispatcher)){
+			routes.removeIf(r->r.dispatcher == dispatcher);
+		}
+		return dispatcher;
+	}
+
+	final List<IMsg.Handler> handlers(){
+		final List<IMsg.Handler> handlers = new ArrayList<>(inline);
+		forEachSubscriber((h, d)->handlers.add(h));
+		return handlers;
+	}
+
+	final boolean hasSubscribers(){
+		return !routes.isEmpty() || !inline.isEmpty();
+	}
+
+	/**
+	 * Moves every subscriber to another topic handler, keeping its dispatcher
+	 * @param other
+	 */
+	final void moveSubscribersTo(TopicHandler other){
+		inline.forEach(h->other.subscribe(h, null));
+		forEachSubscriber(other::subscribe);
+	}
+
+	/**
+	 * Enqueues the message for the queued subscribers, scheduling the topic on their dispatchers,
+	 * then invokes the inline ones.
+	 * @param msg
+	 * @param current dispatcher running on the caller thread, if any
+	 */
+	final void publish(Object msg, Dispatcher current){
+		if(!routes.isEmpty()){
+			enqueue(msg, current);
+			for(Route r : routes){
+				if(r.scheduled.compareAndSet(false, true)){
+					r.dispatcher.schedule(r);
+				}
+			}
+		}
+		for(IMsg.Handler h : inline){
+			try {
+				h.update(true, msg);
+			} catch (Throwable e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Delivers the message immediately, on the caller thread, bypassing the buffer
+	 * @param msg
+	 */
+	void sync(Object msg){
+		for(IMsg.Handler h : handlers()){
+			h.update(true, msg);
+		}
+	}
+
+	List<IMsg.Handler> inlineHandlers(){
+		return inline;
+	}
+
+	private boolean isRouted(Dispatcher dispatcher){
+		for(Route r : routes){
+			if(r.dispatcher == dispatcher) return true;
+		}
+		return false;
+	}
+
+	private boolean serves(Dispatcher dispatcher){
+		final boolean[] found = {false};
+		forEachSubscriber((h, d)->{ if(d == dispatcher) found[0] = true; });
+		return found[0];
+	}
+
+	/**
+	 * @return true if the handler wasn't already subscribed
+	 */
+	abstract boolean add(IMsg.Handler handler, Dispatcher dispatcher);
+
+	/**
+	 * @return the dispatcher the handler was bound to, null if not subscribed
+	 */
+	abstract Dispatcher remove(IMsg.Handler handler);
+
+	abstract void forEachSubscriber(BiConsumer<IMsg.Handler, Dispatcher> consumer);
+
+	/**
+	 * @param msg
+	 * @param current dispatcher running on the caller thread, which can't wait for itself
+	 */
+	abstract void enqueue(Object msg, Dispatcher current);
+
+	/**
+	 * Delivers pending messages to the subscribers bound to the dispatcher
+	 * @return number of delivered messages
+	 */
+	abstract int dispatch(Dispatcher dispatcher);
+
+	abstract TopicStats stats();
+
+	/**
+	 * A topic as seen by one of its dispatchers
+	 */
+	static final class Route {
+		final TopicHandler topic;
+		final Dispatcher dispatcher;
+		/**
+		 * true when the topic is already queued on the dispatcher
+		 */
+		final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+		Route(TopicHandler topic, Dispatcher dispatcher) {
+			this.topic = topic;
+			this.dispatcher = dispatcher;
+		}
+	}
+}
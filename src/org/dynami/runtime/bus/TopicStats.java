@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.bus;
+
+/**
+ * Snapshot of a topic's counters.
+ * @author Atria
+ */
+public class TopicStats {
+	public final String topic;
+	public final OverflowPolicy policy;
+	public final int subscribers;
+	/**
+	 * messages published since topic creation
+	 */
+	public final long published;
+	/**
+	 * messages not yet delivered to the slowest subscriber
+	 */
+	public final long lag;
+	/**
+	 * messages skipped by lagging subscribers
+	 */
+	public final long dropped;
+	/**
+	 * pending messages replaced by a newer one with the same key
+	 */
+	public final long conflated;
+	/**
+	 * number of times a producer had to wait for a free slot
+	 */
+	public final long stalls;
+
+	public TopicStats(String topic, OverflowPolicy policy, int subscribers, long published, long lag, long dropped, long conflated, long stalls) {
+		this.topic = topic;
+		this.policy = policy;
+		this.subscribers = subscribers;
+		this.published = published;
+		this.lag = lag;
+		this.dropped = dropped;
+		this.conflated = conflated;
+		this.stalls = stalls;
+	}
+
+	@Override
+	public String toString() {
+		return "TopicStats [topic=" + topic + ", policy=" + policy + ", subscribers=" + subscribers + ", published="
+				+ published + ", lag=" + lag + ", dropped=" + dropped + ", conflated=" + conflated + ", stalls=" + stalls + "]";
+	}
+}
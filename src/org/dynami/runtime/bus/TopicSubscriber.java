@@ -0,0 +1,34 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.bus;
+
+import org.dynami.core.bus.IMsg;
+
+/**
+ * Subscriber of a topic, it keeps track of the last message it has consumed.
+ * @author Atria
+ */
+class TopicSubscriber {
+	final Sequence sequence;
+	final IMsg.Handler handler;
+	final Dispatcher dispatcher;
+
+	TopicSubscriber(IMsg.Handler handler, Dispatcher dispatcher, long sequence) {
+		this.handler = handler;
+		this.dispatcher = dispatcher;
+		this.sequence = new Sequence(sequence);
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.bus;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Defines how a dispatcher thread behaves when there are no messages to deliver.
+ * Trades off CPU usage against delivery latency:
+ * <ul>
+ * <li>{@link BusySpin} lowest latency, burns a full core</li>
+ * <li>{@link Yielding} low latency, gives the core away to other runnable threads</li>
+ * <li>{@link Parking} spins, yields and finally parks for a fixed amount of time</li>
+ * <li>{@link Blocking} no CPU usage when idle, woken up by producers</li>
+ * </ul>
+ * @author Atria
+ */
+public interface WaitStrategy {
+
+	/**
+	 * Invoked by the dispatcher each time it finds nothing to deliver.
+	 * @param idleCount number of consecutive idle iterations, reset to zero as soon as a message is delivered
+	 * @param ready tells whether new messages have been published in the meantime
+	 * @throws InterruptedException
+	 */
+	public void idle(int idleCount, BooleanSupplier ready) throws InterruptedException;
+
+	/**
+	 * Invoked by producers after publishing a message
+	 */
+	public default void signal(){}
+
+	public static class BusySpin implements WaitStrategy {
+		@Override
+		public void idle(int idleCount, BooleanSupplier ready) {
+			Thread.onSpinWait();
+		}
+	}
+
+	public static class Yielding implements WaitStrategy {
+		private static final int SPIN_TRIES = 100;
+
+		@Override
+		public void idle(int idleCount, BooleanSupplier ready) {
+			if(idleCount < SPIN_TRIES){
+				Thread.onSpinWait();
+			} else {
+				Thread.yield();
+			}
+		}
+	}
+
+	public static class Parking implements WaitStrategy {
+		private static final int SPIN_TRIES = 100;
+		private static final int YIELD_TRIES = 200;
+		private final long parkNanos;
+
+		public Parking(){
+			this(TimeUnit.MICROSECONDS.toNanos(100));
+		}
+
+		public Parking(long parkNanos){
+			this.parkNanos = parkNanos;
+		}
+
+		@Override
+		public void idle(int idleCount, BooleanSupplier ready) {
+			if(idleCount < SPIN_TRIES){
+				Thread.onSpinWait();
+			} else if(idleCount < YIELD_TRIES){
+				Thread.yield();
+			} else {
+				LockSupport.parkNanos(parkNanos);
+			}
+		}
+	}
+
+	public static class Blocking implements WaitStrategy {
+		private static final long MAX_WAIT_MILLIS = 10;
+		private final Lock lock = new ReentrantLock();
+		private final Condition published = lock.newCondition();
+		private volatile boolean waiting = false;
+
+		@Override
+		public void idle(int idleCount, BooleanSupplier ready) throws InterruptedException {
+			lock.lock();
+			try {
+				waiting = true;
+				// re-check after having declared the intention to wait, otherwise a signal could be lost
+				if(!ready.getAsBoolean()){
+					published.await(MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+				}
+			} finally {
+				waiting = false;
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public void signal() {
+			if(waiting){
+				lock.lock();
+				try {
+					published.signalAll();
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+	}
+}
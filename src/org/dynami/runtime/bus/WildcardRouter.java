@@ -0,0 +1,129 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.bus;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+import org.dynami.core.bus.IMsg;
+
+/**
+ * Prefix tree of the wildcard subscriptions, such as <code>ea/*</code>.
+ * Patterns are resolved once, when a matching topic is created, so publishing costs the same
+ * whatever the number of topics and patterns. Lookups walk the topic name only, without scanning patterns.
+ * @author Atria
+ */
+class WildcardRouter {
+	static final String WILDCARD = "*";
+	private final Node root = new Node();
+	private volatile int size = 0;
+
+	static boolean isPattern(String topic){
+		return topic.endsWith(WILDCARD);
+	}
+
+	static String prefix(String pattern){
+		return pattern.substring(0, pattern.length()-WILDCARD.length());
+	}
+
+	synchronized boolean add(String prefix, IMsg.Handler handler, Dispatcher dispatcher){
+		final Node node = node(prefix, true);
+		for(Subscription s : node.subscriptions){
+			if(s.handler.equals(handler)) return false;
+		}
+		node.subscriptions.add(new Subscription(handler, dispatcher));
+		size++;
+		return true;
+	}
+
+	/**
+	 * @return the dispatcher the handler was bound to, null if it was inline or not subscribed at all
+	 */
+	synchronized Dispatcher remove(String prefix, IMsg.Handler handler){
+		final Node node = node(prefix, false);
+		if(node == null) return null;
+		for(Subscription s : node.subscriptions){
+			if(s.handler.equals(handler) && node.subscriptions.remove(s)){
+				size--;
+				return s.dispatcher;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Invoked while creating a topic, serialized with {@link #add(String, IMsg.Handler, Dispatcher)}
+	 * so a pattern added meanwhile is either seen here or applied to the new topic by the subscriber.
+	 */
+	synchronized void forEachMatch(String topic, BiConsumer<IMsg.Handler, Dispatcher> consumer){
+		if(size == 0) return;
+		Node node = root;
+		for(int i = 0; node != null; i++){
+			for(Subscription s : node.subscriptions){
+				consumer.accept(s.handler, s.dispatcher);
+			}
+			if(i == topic.length()) break;
+			node = node.children.get(topic.charAt(i));
+		}
+	}
+
+	/**
+	 * Lock free, used on the publishing path
+	 * @return true if at least a pattern matches the topic
+	 */
+	boolean matches(String topic){
+		if(size == 0) return false;
+		Node node = root;
+		for(int i = 0; node != null; i++){
+			if(!node.subscriptions.isEmpty()) return true;
+			if(i == topic.length()) break;
+			node = node.children.get(topic.charAt(i));
+		}
+		return false;
+	}
+
+	synchronized void clear(){
+		root.children.clear();
+		root.subscriptions.clear();
+		size = 0;
+	}
+
+	private Node node(String prefix, boolean create){
+		Node node = root;
+		for(int i = 0; i < prefix.length() && node != null; i++){
+			node = create?node.children.computeIfAbsent(prefix.charAt(i), c->new Node()):node.children.get(prefix.charAt(i));
+		}
+		return node;
+	}
+
+	private static class Node {
+		private final Map<Character, Node> children = new ConcurrentHashMap<>();
+		private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+	}
+
+	private static class Subscription {
+		private final IMsg.Handler handler;
+		private final Dispatcher dispatcher;
+
+		private Subscription(IMsg.Handler handler, Dispatcher dispatcher) {
+			this.handler = handler;
+			this.dispatcher = dispatcher;
+		}
+	}
+}
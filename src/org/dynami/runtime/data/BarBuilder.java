@@ -56,9 +56,16 @@ class BarBuilder {
 	
 	public Bar close(){
 		try {
-			return new Bar(symbol, open, high, low, close, volume, openInterest, time);
+			return peek();
 		} finally {
 			clear();
 		}
 	}
+	
+	/**
+	 * @return the bar built so far, without clearing the builder
+	 */
+	public Bar peek(){
+		return new Bar(symbol, open, high, low, close, volume, openInterest, time);
+	}
 }
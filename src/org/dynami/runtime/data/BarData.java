@@ -15,37 +15,88 @@
  */
 package org.dynami.runtime.data;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.dynami.core.data.Bar;
 import org.dynami.core.data.IData;
+import org.dynami.core.data.IVolatilityEngine;
 import org.dynami.core.data.Series;
 
+/**
+ * Historical bars stored by column in growable primitive arrays, no Bar object is kept.
+ * <br>Series are built from a column with a single array copy and cached until the bars change,
+ * so indicators reading close() on every event don't pay a stream and a boxed copy each time.
+ * <br>Higher time frames obtained through {@link #timeFrame(long)} and volatilities obtained through
+ * {@link #rollingVolatility(RollingVolatility.Estimator, int)} are updated on every append instead of being recomputed,
+ * {@link #cachedVolatility(IVolatilityEngine, int)} computes engine volatilities once per change of the bars.
+ * <br>Bars are appended by a single writer in time order, readers can access data concurrently.
+ * Time lookups are binary searches, {@link #getPeriod(long, long)} and {@link #getLastBars(int)}
+ * return read only views sharing the same arrays, computing max and min only when asked.
+ * @author Atria
+ */
 public class BarData implements IData {
 	
-	private final int BUFFER_SIZE = 1024;
-	private List<Bar> data = new ArrayList<>(BUFFER_SIZE);
+	private static final int BUFFER_SIZE = 1024;
+	private static final int OPEN = 0, HIGH = 1, LOW = 2, CLOSE = 3, VOLUME = 4, OPEN_INTEREST = 5;
+	private volatile Columns columns;
+	/**
+	 * index of the first bar in columns, not zero for views only
+	 */
+	private final int offset;
+	private final boolean view;
+	private volatile int size = 0;
+	/**
+	 * incremented on every change, including updates of the last bar
+	 */
+	private volatile int version = 0;
 	private double max = 0., min = Double.MAX_VALUE;
+	private volatile boolean extremes = false;
 	private long compression = 0L;
+	private final Series[] series = new Series[6];
+	private final int[] seriesVersion = new int[6];
+	private final List<TimeFrame> timeFrames = new CopyOnWriteArrayList<>();
+	private final List<RollingVolatility> volatilities = new CopyOnWriteArrayList<>();
+	private final Map<IVolatilityEngine, Map<Integer, CachedVolatility>> cachedVolatilities = new HashMap<>();
+	/**
+	 * base data this time frame is computed from, null if bars are appended directly
+	 */
+	private final BarData source;
 	
-	public BarData(){};
+	public BarData(){
+		this.columns = new Columns(BUFFER_SIZE);
+		this.offset = 0;
+		this.view = false;
+		this.source = null;
+	};
 	
-	private BarData(Collection<Bar> bars, long compression){
-		data.addAll(bars);
-		max = data.stream()
-				.mapToDouble(Bar::getHigh)
-				.max().orElse(0L);
-		min = data.stream()
-				.mapToDouble(Bar::getLow)
-				.min().orElse(Long.MAX_VALUE);
+	/**
+	 * Empty time frame of the source data
+	 */
+	BarData(BarData source, long compression){
+		this.columns = new Columns(BUFFER_SIZE);
+		this.offset = 0;
+		this.view = false;
+		this.source = source;
 		this.compression = compression;
 	}
 	
+	/**
+	 * Read only view on bars in the range [from, to) of the source, sharing its arrays.
+	 * Bounds must be computed on a size read before this call.
+	 */
+	private BarData(BarData source, int from, int to){
+		this.columns = source.columns;
+		this.offset = source.offset+from;
+		this.view = true;
+		this.size = Math.max(0, to-from);
+		this.compression = source.getCompression();
+		this.source = null;
+	}
+	
 	@Override
 	public boolean isCompressionRateSat(){
 		return compression > 0;
@@ -53,11 +104,12 @@ public class BarData implements IData {
 	
 	@Override
 	public boolean setAutoCompressionRate(){
-		if(data.size() > 3 && !isCompressionRateSat()){
+		if(size > 3 && !isCompressionRateSat()){
+			final long[] time = columns.time;
 			long distance = 0;
 			long tmp;
-			for(int i = 1; i < 4; i++){
-				tmp = data.get(i).time-data.get(i-1).time;
+			for(int i = offset+1; i < offset+4; i++){
+				tmp = time[i]-time[i-1];
 				if(distance == 0) distance = tmp;
 				if(tmp < distance) distance = tmp;
 			}
@@ -71,131 +123,279 @@ public class BarData implements IData {
 	}
 	
 	public void append(final Bar bar){
-		Lock lock = new ReentrantLock();
-		try {
-			lock.lock();
-			data.add(bar);
-			if(max < bar.high) max = bar.high;
-			if(min > bar.low) min = bar.low;
-		} finally {
-			lock.unlock();
+		append(bar.symbol, bar.time, bar.open, bar.high, bar.low, bar.close, bar.volume, bar.openInterest, bar);
+	}
+	
+	/**
+	 * Appends a bar given its fields, without creating a Bar unless a time frame needs it
+	 */
+	void append(String symbol, long time, double open, double high, double low, double close, long volume, long openInterest){
+		append(symbol, time, open, high, low, close, volume, openInterest, null);
+	}
+	
+	private synchronized void append(String symbol, long time, double open, double high, double low, double close, long volume, long openInterest, Bar bar){
+		if(view){
+			throw new UnsupportedOperationException("Cannot append to a view");
+		}
+		final int idx = size;
+		Columns c = columns;
+		if(idx == c.time.length){
+			final Columns grown = new Columns(c.time.length*2);
+			grown.copy(c, 0, 0, idx);
+			// published before size, so readers seeing the new size see the new arrays too
+			columns = c = grown;
+		}
+		c.symbol[idx] = symbol;
+		c.time[idx] = time;
+		c.open[idx] = open;
+		c.high[idx] = high;
+		c.low[idx] = low;
+		c.close[idx] = close;
+		c.volume[idx] = volume;
+		c.openInterest[idx] = openInterest;
+		if(max < high) max = high;
+		if(min > low) min = low;
+		size = idx+1;
+		version++;
+		for(RollingVolatility v : volatilities){
+			v.push(open, high, low, close);
+		}
+		if(!timeFrames.isEmpty()){
+			final Bar b = (bar != null)?bar:c.bar(idx);
+			for(TimeFrame tf : timeFrames){
+				tf.push(b);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the volatility over the last bars, maintained incrementally from now on.
+	 * The first call computes it on the current history, next calls return the same instance.
+	 * On views and time frames the volatility is computed on the current bars only.
+	 * @param estimator
+	 * @param window number of bars
+	 */
+	public RollingVolatility rollingVolatility(RollingVolatility.Estimator estimator, int window){
+		for(RollingVolatility v : volatilities){
+			if(v.estimator() == estimator && v.window() == window) return v;
+		}
+		synchronized (this) {
+			for(RollingVolatility v : volatilities){
+				if(v.estimator() == estimator && v.window() == window) return v;
+			}
+			final RollingVolatility v = new RollingVolatility(estimator, window);
+			final int n = size;
+			final Columns c = columns;
+			for(int i = offset+Math.max(0, n-window); i < offset+n; i++){
+				v.push(c.open[i], c.high[i], c.low[i], c.close[i]);
+			}
+			// views don't grow and time frames update their last bar in place, both get a snapshot
+			if(!view && source == null){
+				volatilities.add(v);
+			}
+			return v;
+		}
+	}
+	
+	/**
+	 * Volatility computed by the engine over the last bars, cached until the bars change:
+	 * callers asking it for many instruments on the same bar scan the window once, getting the engine's own result
+	 * @param engine
+	 * @param window number of bars
+	 */
+	public synchronized double cachedVolatility(IVolatilityEngine engine, int window){
+		final Map<Integer, CachedVolatility> byWindow = cachedVolatilities.computeIfAbsent(engine, e->new HashMap<>());
+		CachedVolatility cached = byWindow.get(window);
+		if(cached == null){
+			cached = new CachedVolatility();
+			byWindow.put(window, cached);
+		}
+		if(cached.version != version){
+			cached.value = getVolatility(engine, window);
+			cached.version = version;
+		}
+		return cached.value;
+	}
+	
+	/**
+	 * Stops updating a volatility no longer needed
+	 */
+	public void removeRollingVolatility(RollingVolatility volatility){
+		volatilities.remove(volatility);
+	}
+	
+	/**
+	 * Replaces the last bar, used by time frames to update the bar still forming
+	 */
+	synchronized void updateLast(final Bar bar){
+		final int idx = size-1;
+		final Columns c = columns;
+		c.symbol[idx] = bar.symbol;
+		c.time[idx] = bar.time;
+		c.open[idx] = bar.open;
+		c.high[idx] = bar.high;
+		c.low[idx] = bar.low;
+		c.close[idx] = bar.close;
+		c.volume[idx] = bar.volume;
+		c.openInterest[idx] = bar.openInterest;
+		if(max < bar.high) max = bar.high;
+		if(min > bar.low) min = bar.low;
+		version++;
+	}
+	
+	/**
+	 * Returns the bars resampled at the given compression, maintained incrementally from now on.
+	 * The first call resamples the current history, next calls return the same instance.
+	 * @param compression milliseconds, multiple of the current compression
+	 * @return the resampled data, this if compression is the current one, null if it isn't a multiple of it
+	 */
+	public BarData timeFrame(long compression){
+		if(source != null){
+			return source.timeFrame(compression);
+		}
+		if(view){
+			// views don't grow, a single resampling is enough
+			return (BarData)changeCompression(compression);
+		}
+		if(compression == this.compression){
+			return this;
+		}
+		if(compression <= 0 || (isCompressionRateSat() && (compression%this.compression != 0 || compression < this.compression))){
+			return null;
+		}
+		for(TimeFrame tf : timeFrames){
+			if(tf.compression == compression) return tf.data;
+		}
+		synchronized (this) {
+			for(TimeFrame tf : timeFrames){
+				if(tf.compression == compression) return tf.data;
+			}
+			final TimeFrame tf = new TimeFrame(this, compression);
+			final int n = size;
+			final Columns c = columns;
+			for(int i = 0; i < n; i++){
+				tf.push(c.bar(i));
+			}
+			timeFrames.add(tf);
+			return tf.data;
 		}
 	}
 
 	@Override
 	public Series open() {
-		return new Series(
-				data.stream()
-				.mapToDouble(Bar::getOpen)
-				.toArray());
+		return series(OPEN);
 	}
 
 	@Override
 	public Series high() {
-		return new Series(
-				data.stream()
-				.mapToDouble(Bar::getHigh)
-				.toArray());
+		return series(HIGH);
 	}
 
 	@Override
 	public Series low() {
-		return new Series(
-				data.stream()
-				.mapToDouble(Bar::getLow)
-				.toArray());
+		return series(LOW);
 	}
 
 	@Override
 	public Series close() {
-		return new Series(
-				data.stream()
-				.mapToDouble(Bar::getClose)
-				.toArray());
+		return series(CLOSE);
 	}
 
 	@Override
 	public Series volume() {
-		return new Series(
-				data.stream()
-				.mapToDouble(Bar::getVolume)
-				.toArray());
+		return series(VOLUME);
 	}
 
 	@Override
 	public Series openInterest() {
-		return new Series(
-				data.stream()
-				.mapToDouble(Bar::getOpenInterest)
-				.toArray());
+		return series(OPEN_INTEREST);
 	}
 
 	@Override
 	public double getMax() {
+		if(view && !extremes) computeExtremes();
 		return max;
 	}
 
 	@Override
 	public double getMin() {
+		if(view && !extremes) computeExtremes();
 		return min;
 	}
 
 	@Override
 	public long getBegin() {
-		return data.get(0).time;
+		checkIndex(0, size);
+		return columns.time[offset];
 	}
 
 	@Override
 	public long getEnd() {
-		return data.get(data.size()-1).time;
+		final int n = size;
+		checkIndex(n-1, n);
+		return columns.time[offset+n-1];
 	}
 
 	@Override
 	public Bar last() {
-		return data.get(data.size()-1);
+		return get(size-1);
 	}
 
 	@Override
 	public Bar get(int idx) {
-		return data.get(idx);
+		final int n = size;
+		final Columns c = columns;
+		checkIndex(idx, n);
+		return c.bar(offset+idx);
 	}
 
 	@Override
 	public Bar[] toArray() {
-		Bar[] out = new Bar[data.size()];
-		out = data.toArray(out);
+		final int n = size;
+		final Columns c = columns;
+		final Bar[] out = new Bar[n];
+		for(int i = 0; i < n; i++){
+			out[i] = c.bar(offset+i);
+		}
 		return out;
 	}
 
 	@Override
 	public int size() {
-		return data.size();
+		return size;
 	}
 
 	@Override
 	public Bar getByTime(long time) {
-		return data.stream()
-				.filter(b-> b.time == time)
-				.findFirst().get();
+		final int n = size;
+		final Columns c = columns;
+		final int idx = search(c.time, time, n, false);
+		if(idx < n && c.time[offset+idx] == time){
+			return c.bar(offset+idx);
+		}
+		throw new java.util.NoSuchElementException("No bar at "+time);
 	}
 	
+	/**
+	 * @return a view on the last bars, all of them if number exceeds size
+	 */
 	@Override
 	public IData getLastBars(int number) {
-		if(number >= data.size()){
-			return new BarData(data.subList(data.size()-1-number, data.size()-1), getCompression());
-		} else {
-			return null;
-		}
+		final int n = size;
+		final int length = Math.max(0, Math.min(number, n));
+		return new BarData(this, n-length, n);
 	}
 
+	/**
+	 * @return a view on bars having time in [begin, end]
+	 */
 	@Override
 	public IData getPeriod(long begin, long end) {
-		List<Bar> bars = data.stream()
-				.filter(b-> b.time >= begin)
-				.filter(b-> b.time <= end)
-				.collect(Collectors.toList());
-		
-		return new BarData(bars, getCompression());
+		final int n = size;
+		final Columns c = columns;
+		final int from = search(c.time, begin, n, false);
+		final int to = search(c.time, end, n, true);
+		return new BarData(this, from, Math.max(from, to));
 	}
 	
 	@Override
@@ -203,6 +403,32 @@ public class BarData implements IData {
 		return compression;
 	}
 	
+	/**
+	 * Sets the compression of bars known in advance, e.g. restored from a cache
+	 */
+	void compression(long compression) {
+		this.compression = compression;
+	}
+	
+	/**
+	 * @return the close price of the bar, without creating any object
+	 */
+	public double close(int idx) {
+		final int n = size;
+		final Columns c = columns;
+		checkIndex(idx, n);
+		return c.close[offset+idx];
+	}
+	
+	/**
+	 * @return the time of the bar, without creating any object
+	 */
+	public long time(int idx) {
+		final int n = size;
+		final Columns c = columns;
+		checkIndex(idx, n);
+		return c.time[offset+idx];
+	}
 	
 	public IData changeCompression(long compression){
 		final long currentCompression = this.compression;
@@ -212,8 +438,11 @@ public class BarData implements IData {
 			long _currentUnits = 0, _previousUnits = 0;
 			BarData out = new BarData();
 			out.compression = newCompression;
+			final int n = size;
+			final Columns c = columns;
 			
-			for(Bar bar : data){
+			for(int i = 0; i < n; i++){
+				final Bar bar = c.bar(offset+i);
 				_currentUnits = (bar.time/newCompression);
 				// at the first iteration set previous units with the same value of current to avoid a fake bar; 
 				if(_previousUnits == 0) _previousUnits = _currentUnits;
@@ -236,4 +465,111 @@ public class BarData implements IData {
 			return null;
 		}
 	}
+	
+	/**
+	 * @return the cached series of the column, copied from the column array only if bars have changed since the last call
+	 */
+	private synchronized Series series(int column){
+		final int v = version;
+		final int n = size;
+		if(series[column] == null || seriesVersion[column] != v){
+			final Columns c = columns;
+			final double[] values;
+			switch (column) {
+			case OPEN: values = Arrays.copyOfRange(c.open, offset, offset+n); break;
+			case HIGH: values = Arrays.copyOfRange(c.high, offset, offset+n); break;
+			case LOW: values = Arrays.copyOfRange(c.low, offset, offset+n); break;
+			case CLOSE: values = Arrays.copyOfRange(c.close, offset, offset+n); break;
+			case VOLUME: values = toDouble(c.volume, offset, n); break;
+			default: values = toDouble(c.openInterest, offset, n); break;
+			}
+			series[column] = new Series(values);
+			seriesVersion[column] = v;
+		}
+		return series[column];
+	}
+	
+	private static double[] toDouble(long[] in, int from, int length){
+		final double[] out = new double[length];
+		for(int i = 0; i < length; i++){
+			out[i] = in[from+i];
+		}
+		return out;
+	}
+	
+	/**
+	 * Binary search on the time column
+	 * @param after if false returns the first bar at or after time, otherwise the first bar after time
+	 * @return index relative to offset, n if no bar qualifies
+	 */
+	private int search(long[] times, long time, int n, boolean after){
+		int low = 0, high = n;
+		while(low < high){
+			final int mid = (low+high) >>> 1;
+			final long t = times[offset+mid];
+			if(t < time || (after && t == time)){
+				low = mid+1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+	
+	private synchronized void computeExtremes(){
+		if(extremes) return;
+		final Columns c = columns;
+		for(int i = offset; i < offset+size; i++){
+			if(max < c.high[i]) max = c.high[i];
+			if(min > c.low[i]) min = c.low[i];
+		}
+		extremes = true;
+	}
+	
+	private static void checkIndex(int idx, int size){
+		if(idx < 0 || idx >= size){
+			throw new IndexOutOfBoundsException("Index: "+idx+", Size: "+size);
+		}
+	}
+	
+	private static final class CachedVolatility {
+		private int version = -1;
+		private double value;
+	}
+	
+	/**
+	 * Primitive arrays sharing the same capacity, replaced as a whole when growing
+	 */
+	private static class Columns {
+		private final String[] symbol;
+		private final long[] time;
+		private final double[] open, high, low, close;
+		private final long[] volume, openInterest;
+		
+		private Columns(int capacity){
+			symbol = new String[capacity];
+			time = new long[capacity];
+			open = new double[capacity];
+			high = new double[capacity];
+			low = new double[capacity];
+			close = new double[capacity];
+			volume = new long[capacity];
+			openInterest = new long[capacity];
+		}
+		
+		private void copy(Columns src, int from, int to, int length){
+			System.arraycopy(src.symbol, from, symbol, to, length);
+			System.arraycopy(src.time, from, time, to, length);
+			System.arraycopy(src.open, from, open, to, length);
+			System.arraycopy(src.high, from, high, to, length);
+			System.arraycopy(src.low, from, low, to, length);
+			System.arraycopy(src.close, from, close, to, length);
+			System.arraycopy(src.volume, from, volume, to, length);
+			System.arraycopy(src.openInterest, from, openInterest, to, length);
+		}
+		
+		private Bar bar(int idx){
+			return new Bar(symbol[idx], open[idx], high[idx], low[idx], close[idx], volume[idx], openInterest[idx], time[idx]);
+		}
+	}
 }
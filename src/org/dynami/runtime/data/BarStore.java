@@ -0,0 +1,189 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.data;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.dynami.core.data.Bar;
+import org.dynami.core.data.IData;
+
+/**
+ * Bars of a single symbol stored in a binary file with fixed size records, read through a memory mapped buffer.
+ * <br>Layout, big endian: magic, version, symbol length and UTF-8 bytes, then one record per bar made of
+ * time, open, high, low, close, volume and open interest.
+ * <br>Bars are read in place from the mapped file, nothing is parsed.
+ * @author Atria
+ */
+public class BarStore implements Closeable {
+	public static final int MAGIC = 0x44424152; // "DBAR"
+	public static final int VERSION = 1;
+	public static final String EXTENSION = ".dbar";
+	public static final int RECORD_SIZE = 8*7;
+	
+	private final RandomAccessFile file;
+	private final MappedByteBuffer buffer;
+	private final String symbol;
+	private final int header;
+	private final int size;
+	
+	private BarStore(File f) throws IOException {
+		file = new RandomAccessFile(f, "r");
+		try {
+			final FileChannel channel = file.getChannel();
+			if(channel.size() > Integer.MAX_VALUE){
+				throw new IOException("File ["+f.getAbsolutePath()+"] exceeds "+Integer.MAX_VALUE+" bytes");
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.BIG_ENDIAN);
+			if(buffer.remaining() < 10 || buffer.getInt(0) != MAGIC){
+				throw new IOException("File ["+f.getAbsolutePath()+"] is not a bar store");
+			}
+			if(buffer.getInt(4) != VERSION){
+				throw new IOException("Unsupported bar store version "+buffer.getInt(4));
+			}
+			final int symbolLength = buffer.getShort(8) & 0xFFFF;
+			final byte[] bytes = new byte[symbolLength];
+			buffer.position(10);
+			buffer.get(bytes);
+			symbol = new String(bytes, StandardCharsets.UTF_8);
+			header = 10+symbolLength;
+			size = (buffer.capacity()-header)/RECORD_SIZE;
+		} catch (IOException | RuntimeException e) {
+			file.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Maps the file in memory, it must be closed once done
+	 */
+	public static BarStore open(File f) throws IOException {
+		return new BarStore(f);
+	}
+	
+	/**
+	 * @return true if the file starts with the bar store magic number
+	 */
+	public static boolean isBarStore(File f){
+		if(!f.isFile() || f.length() < 4) return false;
+		try (DataInputStream in = new DataInputStream(new FileInputStream(f))) {
+			return in.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Writes all bars of the data to a new bar store, replacing the file if it exists
+	 */
+	public static void write(File f, String symbol, IData data) throws IOException {
+		final byte[] bytes = symbol.getBytes(StandardCharsets.UTF_8);
+		try (RandomAccessFile out = new RandomAccessFile(f, "rw")) {
+			out.setLength(0);
+			final FileChannel channel = out.getChannel();
+			final ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_SIZE*1024).order(ByteOrder.BIG_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putShort((short)bytes.length).put(bytes);
+			final int size = data.size();
+			for(int i = 0; i < size; i++){
+				if(buffer.remaining() < RECORD_SIZE){
+					flush(channel, buffer);
+				}
+				final Bar bar = data.get(i);
+				buffer.putLong(bar.time)
+					.putDouble(bar.open)
+					.putDouble(bar.high)
+					.putDouble(bar.low)
+					.putDouble(bar.close)
+					.putLong(bar.volume)
+					.putLong(bar.openInterest);
+			}
+			flush(channel, buffer);
+		}
+	}
+	
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+	
+	public String symbol(){
+		return symbol;
+	}
+	
+	public int size(){
+		return size;
+	}
+	
+	public long time(int idx){
+		return buffer.getLong(offset(idx));
+	}
+	
+	public Bar get(int idx){
+		final int o = offset(idx);
+		return new Bar(symbol,
+				buffer.getDouble(o+8),
+				buffer.getDouble(o+16),
+				buffer.getDouble(o+24),
+				buffer.getDouble(o+32),
+				buffer.getLong(o+40),
+				buffer.getLong(o+48),
+				buffer.getLong(o));
+	}
+	
+	/**
+	 * Copies all bars into a new {@link BarData}, straight from the mapped buffer to its columns
+	 */
+	public BarData load(){
+		final BarData data = new BarData();
+		for(int i = 0; i < size; i++){
+			final int o = header+i*RECORD_SIZE;
+			data.append(symbol,
+					buffer.getLong(o),
+					buffer.getDouble(o+8),
+					buffer.getDouble(o+16),
+					buffer.getDouble(o+24),
+					buffer.getDouble(o+32),
+					buffer.getLong(o+40),
+					buffer.getLong(o+48));
+		}
+		return data;
+	}
+	
+	private int offset(int idx){
+		if(idx < 0 || idx >= size){
+			throw new IndexOutOfBoundsException("Index: "+idx+", Size: "+size);
+		}
+		return header+idx*RECORD_SIZE;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * On disk cache of parsed and resampled histories, stored as {@link BarStore} files.
+ * <br>Entries are keyed by source path, source modification time and size, symbol and compression,
+ * so a changed source file is never served from the cache.
+ * The least recently used entries are deleted once the directory exceeds its size limit.
+ * <br>Instances are shared per directory, several runs in the same process can use the cache concurrently.
+ * @author Atria
+ */
+public class HistoryCache {
+	private static final Map<File, HistoryCache> caches = new ConcurrentHashMap<>();
+	private final File dir;
+	private volatile long maxBytes;
+	private final AtomicLong hits = new AtomicLong(0);
+	private final AtomicLong misses = new AtomicLong(0);
+	private final AtomicLong evictions = new AtomicLong(0);
+	
+	private HistoryCache(File dir, long maxBytes) {
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+	}
+	
+	/**
+	 * @param dir cache directory, created if missing
+	 * @param maxBytes size limit of the directory
+	 * @return the cache of the directory, with the given size limit
+	 */
+	public static HistoryCache of(File dir, long maxBytes){
+		final HistoryCache cache = caches.computeIfAbsent(dir.getAbsoluteFile(), d->new HistoryCache(d, maxBytes));
+		cache.maxBytes = maxBytes;
+		return cache;
+	}
+	
+	@FunctionalInterface
+	public static interface Loader {
+		public BarData load() throws Exception;
+	}
+	
+	/**
+	 * Returns the cached history, or loads it and stores it for next requests
+	 * @param source file the history is read from
+	 * @param symbol
+	 * @param compression compression of the history returned by the loader
+	 * @param loader parses and resamples the source on a cache miss
+	 */
+	public BarData get(File source, String symbol, long compression, Loader loader) throws Exception {
+		final File entry = new File(dir, key(source, symbol, compression)+BarStore.EXTENSION);
+		if(entry.isFile()){
+			try (BarStore store = BarStore.open(entry)) {
+				final BarData data = store.load();
+				data.compression(compression);
+				entry.setLastModified(System.currentTimeMillis());
+				hits.incrementAndGet();
+				return data;
+			} catch (IOException e) {
+				// corrupted or partially deleted entry, rebuilt below
+				entry.delete();
+			}
+		}
+		misses.incrementAndGet();
+		final BarData data = loader.load();
+		if(data != null){
+			put(entry, symbol, data);
+		}
+		return data;
+	}
+	
+	private void put(File entry, String symbol, BarData data) throws IOException {
+		if(!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()){
+			throw new IOException("Unable to create cache directory ["+dir.getAbsolutePath()+"]");
+		}
+		// written aside and moved, concurrent readers never see a partial entry
+		final File tmp = File.createTempFile("history", ".tmp", dir);
+		try {
+			BarStore.write(tmp, symbol, data);
+			Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tmp.delete();
+		}
+		evict();
+	}
+	
+	private synchronized void evict(){
+		final File[] entries = dir.listFiles((d, name)->name.endsWith(BarStore.EXTENSION));
+		if(entries == null) return;
+		long total = 0;
+		for(File f : entries){
+			total += f.length();
+		}
+		if(total <= maxBytes) return;
+		Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+		for(int i = 0; i < entries.length && total > maxBytes; i++){
+			final long length = entries[i].length();
+			if(entries[i].delete()){
+				total -= length;
+				evictions.incrementAndGet();
+			}
+		}
+	}
+	
+	/**
+	 * Deletes all entries
+	 */
+	public synchronized void clear(){
+		final File[] entries = dir.listFiles((d, name)->name.endsWith(BarStore.EXTENSION));
+		if(entries == null) return;
+		for(File f : entries){
+			f.delete();
+		}
+	}
+	
+	private static String key(File source, String symbol, long compression) throws IOException {
+		final String id = source.getCanonicalPath()+'|'+source.lastModified()+'|'+source.length()+'|'+symbol+'|'+compression;
+		try {
+			final byte[] hash = MessageDigest.getInstance("SHA-1").digest(id.getBytes(StandardCharsets.UTF_8));
+			final StringBuilder sb = new StringBuilder(source.getName().replaceAll("[^A-Za-z0-9_.-]", "_")).append('-');
+			for(int i = 0; i < 10; i++){
+				sb.append(String.format("%02x", hash[i]));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	public long hits(){
+		return hits.get();
+	}
+	
+	public long misses(){
+		return misses.get();
+	}
+	
+	public long evictions(){
+		return evictions.get();
+	}
+	
+	@Override
+	public String toString() {
+		return "HistoryCache [dir=" + dir + ", maxBytes=" + maxBytes + ", hits=" + hits.get() + ", misses=" + misses.get() + ", evictions=" + evictions.get() + "]";
+	}
+}
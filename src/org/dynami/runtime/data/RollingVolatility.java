@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.data;
+
+/**
+ * Range based volatility over the last bars, updated in constant time on every bar
+ * by keeping each bar's term in a ring buffer together with their running sum.
+ * <br>The sum is recomputed from the buffer once per cycle, so rounding errors don't accumulate.
+ * <br>The value is not annualized, as for {@link org.dynami.core.data.IVolatilityEngine#compute(org.dynami.core.data.IData, int)}.
+ * @author Atria
+ */
+public class RollingVolatility {
+	private final Estimator estimator;
+	private final double[] terms;
+	private int next = 0;
+	private int count = 0;
+	private double sum = 0;
+	
+	public static enum Estimator {
+		/**
+		 * sqrt(sum(ln(H/L)^2) / (4*n*ln(2)))
+		 */
+		Parkinson {
+			@Override
+			double term(double open, double high, double low, double close) {
+				final double hl = Math.log(high/low);
+				return hl*hl;
+			}
+			
+			@Override
+			double variance(double sum, int n) {
+				return sum/(4*n*Math.log(2));
+			}
+		},
+		/**
+		 * sqrt(sum(ln(H/C)*ln(H/O) + ln(L/C)*ln(L/O)) / n)
+		 */
+		RogersSatchell {
+			@Override
+			double term(double open, double high, double low, double close) {
+				return Math.log(high/close)*Math.log(high/open) + Math.log(low/close)*Math.log(low/open);
+			}
+			
+			@Override
+			double variance(double sum, int n) {
+				return sum/n;
+			}
+		};
+		
+		abstract double term(double open, double high, double low, double close);
+		
+		abstract double variance(double sum, int n);
+	}
+	
+	/**
+	 * @param estimator
+	 * @param window number of bars
+	 */
+	public RollingVolatility(Estimator estimator, int window) {
+		if(window < 1){
+			throw new IllegalArgumentException("Window must be positive, was "+window);
+		}
+		this.estimator = estimator;
+		this.terms = new double[window];
+	}
+	
+	public synchronized void push(double open, double high, double low, double close){
+		final double term = estimator.term(open, high, low, close);
+		sum += term-terms[next];
+		terms[next] = term;
+		next++;
+		if(count < terms.length) count++;
+		if(next == terms.length){
+			next = 0;
+			double exact = 0;
+			for(double t : terms){
+				exact += t;
+			}
+			sum = exact;
+		}
+	}
+	
+	/**
+	 * @return volatility over the last window bars, or over all bars if fewer, zero if none
+	 */
+	public synchronized double value(){
+		if(count == 0) return 0;
+		return Math.sqrt(Math.max(0, estimator.variance(sum, count)));
+	}
+	
+	public Estimator estimator(){
+		return estimator;
+	}
+	
+	public int window(){
+		return terms.length;
+	}
+	
+	/**
+	 * @return number of bars in the window, up to its size
+	 */
+	public synchronized int count(){
+		return count;
+	}
+}
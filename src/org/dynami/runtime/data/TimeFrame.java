@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.data;
+
+import org.dynami.core.data.Bar;
+
+/**
+ * Higher time frame of a {@link BarData}, kept up to date on every appended base bar.
+ * The last bar is the one still forming, updated in place until a bar of the next period arrives.
+ * @author Atria
+ */
+class TimeFrame {
+	final long compression;
+	final BarData data;
+	private final BarBuilder builder = new BarBuilder();
+	private long units = Long.MIN_VALUE;
+	
+	TimeFrame(BarData source, long compression) {
+		this.compression = compression;
+		this.data = new BarData(source, compression);
+	}
+	
+	void push(final Bar bar){
+		final long current = bar.time/compression;
+		if(builder.empty || current != units){
+			builder.clear();
+			builder.pop(bar);
+			units = current;
+			data.append(builder.peek());
+		} else {
+			builder.pop(bar);
+			data.updateLast(builder.peek());
+		}
+	}
+}
@@ -23,6 +23,8 @@ import org.dynami.core.portfolio.ClosedPosition;
 import org.dynami.core.portfolio.OpenPosition;
 import org.dynami.core.services.IPortfolioService;
 import org.dynami.runtime.IServiceBus.ServiceStatus;
+import org.dynami.runtime.bus.Affinity;
+import org.dynami.runtime.bus.Msg;
 import org.dynami.runtime.handlers.TextFileDataHandler;
 import org.dynami.runtime.ib.IBDataHandler;
 import org.dynami.runtime.impl.Execution;
@@ -35,15 +37,16 @@ public class Starter {
 	private final AtomicBoolean started = new AtomicBoolean(false);
 
 	public Starter() {
-		Execution.Manager.msg().subscribe(Topics.SERVICE_STATUS.topic, (last, _msg)->{
+		// console output runs on its own thread, so it doesn't slow down services and strategy
+		Msg.Broker.subscribe(Topics.SERVICE_STATUS.topic, (last, _msg)->{
 			ServiceStatus s = (ServiceStatus)_msg;
 			System.out.println(s);
-		});
+		}, Affinity.thread("console"));
 
-		Execution.Manager.msg().subscribe(Topics.INTERNAL_ERRORS.topic, (last, _msg)->{
+		Msg.Broker.subscribe(Topics.INTERNAL_ERRORS.topic, (last, _msg)->{
 			Throwable e = (Throwable)_msg;
 			e.printStackTrace();
-		});
+		}, Affinity.thread("console"));
 	}
 
 	public static void main(String[] args) {
@@ -66,6 +69,7 @@ public class Starter {
 
 		Execution.Manager.getServiceBus().registerDefaultServices();
 		Execution.Manager.getServiceBus().registerService(new IBDataHandler(), 100);
+		Execution.Manager.setBacktest(arguments.backtest);
 
 		if(Execution.Manager.select(arguments.instanceFilePath, arguments.strategyLibPath)){
 			if(Execution.Manager.init(null)){
@@ -115,12 +119,20 @@ public class Starter {
 
 			break;
 		case Commands.RUN:
-			try {
-				boolean executed = Execution.Manager.run();
-				started.set(executed);
-				System.err.println(Commands.START_RESPONSE+cmd+"_"+((executed)?Commands.RESPONSE_EXECUTED:Commands.RESPONSE_NOT_EXECUTED)+Commands.END_RESPONSE);
-			} catch (Exception e) {
-				System.err.println(Commands.START_RESPONSE+cmd+"_"+Commands.RESPONSE_NOT_EXECUTED+Commands.END_RESPONSE);
+			final Runnable run = ()->{
+				try {
+					boolean executed = Execution.Manager.run();
+					started.set(executed);
+					System.err.println(Commands.START_RESPONSE+cmd+"_"+((executed)?Commands.RESPONSE_EXECUTED:Commands.RESPONSE_NOT_EXECUTED)+Commands.END_RESPONSE);
+				} catch (Exception e) {
+					System.err.println(Commands.START_RESPONSE+cmd+"_"+Commands.RESPONSE_NOT_EXECUTED+Commands.END_RESPONSE);
+				}
+			};
+			if(Execution.Manager.isBacktest()){
+				// backtest runs until data are over, commands are still accepted meanwhile
+				new Thread(run, "Dynami-Backtest").start();
+			} else {
+				run.run();
 			}
 			break;
 		case Commands.PAUSE:
@@ -223,5 +235,8 @@ public class Starter {
 
 		@Parameter(names = "-strategy_lib", required = true)
 		String strategyLibPath;
+
+		@Parameter(names = "-backtest", description = "Deterministic replay, without clock delays")
+		boolean backtest = false;
 	}
 }
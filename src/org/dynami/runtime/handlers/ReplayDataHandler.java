@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.handlers;
+
+import org.dynami.core.config.Config;
+import org.dynami.runtime.IDataHandler;
+import org.dynami.runtime.Service;
+import org.dynami.runtime.services.FillModel;
+import org.dynami.runtime.services.SimulatedFillModel;
+
+/**
+ * Base of the data handlers replaying historical data, holding the parameters of the simulated order execution.
+ * @author Atria
+ */
+public abstract class ReplayDataHandler extends Service implements IDataHandler, IDataHandler.Replay {
+
+	@Config.Param(name = "Order latency", description = "Milliseconds before a simulated order reaches the market", min = 0, step = 1)
+	private Long orderLatency = 0L;
+
+	@Config.Param(name = "Report latency", description = "Milliseconds before a simulated execution is reported to the strategy", min = 0, step = 1)
+	private Long reportLatency = 0L;
+
+	@Config.Param(name = "Partial fills", description = "Execute no more than the quantity quoted on the book")
+	private Boolean partialFills = false;
+
+	@Config.Param(name = "Queue position", description = "Execute the quantity resting ahead at the same price first")
+	private Boolean queuePosition = false;
+
+	@Config.Param(name = "Slippage", description = "Fixed slippage as a fraction of price", min = 0, step = .0001)
+	private Double slippage = 0.;
+
+	@Config.Param(name = "Market impact", description = "Square root market impact coefficient as a fraction of price", min = 0, step = .0001)
+	private Double marketImpact = 0.;
+
+	@Override
+	public FillModel fillModel() {
+		if(orderLatency == 0 && reportLatency == 0 && !partialFills && !queuePosition && slippage == 0 && marketImpact == 0){
+			return FillModel.IMMEDIATE;
+		}
+		return new SimulatedFillModel(orderLatency, reportLatency, partialFills, queuePosition, slippage, marketImpact);
+	}
+
+	public Long getOrderLatency() {
+		return orderLatency;
+	}
+
+	public void setOrderLatency(Long orderLatency) {
+		this.orderLatency = orderLatency;
+	}
+
+	public Long getReportLatency() {
+		return reportLatency;
+	}
+
+	public void setReportLatency(Long reportLatency) {
+		this.reportLatency = reportLatency;
+	}
+
+	public Boolean isPartialFills() {
+		return partialFills;
+	}
+
+	public void setPartialFills(Boolean partialFills) {
+		this.partialFills = partialFills;
+	}
+
+	public Boolean isQueuePosition() {
+		return queuePosition;
+	}
+
+	public void setQueuePosition(Boolean queuePosition) {
+		this.queuePosition = queuePosition;
+	}
+
+	public Double getSlippage() {
+		return slippage;
+	}
+
+	public void setSlippage(Double slippage) {
+		this.slippage = slippage;
+	}
+
+	public Double getMarketImpact() {
+		return marketImpact;
+	}
+
+	public void setMarketImpact(Double marketImpact) {
+		this.marketImpact = marketImpact;
+	}
+}
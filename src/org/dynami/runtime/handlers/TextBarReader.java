@@ -0,0 +1,304 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.handlers;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+import org.dynami.core.data.Bar;
+import org.dynami.runtime.handlers.TextFileDataHandler.TRACK_RECORD;
+
+/**
+ * Streams bars from a text file in {@link TRACK_RECORD} layout, one buffered chunk at a time.
+ * <br>Dates and numbers are decoded straight from the bytes, no String is created per line.
+ * Bars are resampled on the fly at the given compression, so memory doesn't depend on the file size.
+ * @author Atria
+ */
+public class TextBarReader implements Closeable {
+	private static final int BUFFER_SIZE = 64*1024;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final String symbol;
+	private final long compression;
+	private final DateDecoder dates;
+	private byte[] line = new byte[256];
+	private final int[] bounds = new int[2*(TRACK_RECORD.VOLUME+1)];
+	private int lineLength;
+	private int lineNumber = 0;
+	private boolean eof = false;
+	// bar being resampled
+	private boolean pending = false;
+	private long bucket, time, volume;
+	private double open, high, low, close;
+	// raw bar read ahead, belonging to the next bucket
+	private boolean ahead = false;
+	private long aheadTime, aheadVolume;
+	private double aheadOpen, aheadHigh, aheadLow, aheadClose;
+	
+	/**
+	 * @param f
+	 * @param symbol
+	 * @param compression milliseconds of the returned bars, 0 to return bars as they are
+	 */
+	public TextBarReader(File f, String symbol, long compression) throws IOException {
+		this(f, symbol, compression, DateDecoder.DEFAULT);
+	}
+	
+	public TextBarReader(File f, String symbol, long compression, DateDecoder dates) throws IOException {
+		this.channel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+		this.symbol = symbol;
+		this.compression = compression;
+		this.dates = dates;
+		buffer.flip();
+		// header line
+		readLine();
+	}
+	
+	/**
+	 * @return the next bar, null when the file is over
+	 */
+	public Bar next() throws IOException {
+		while(true){
+			if(!ahead && !readBar()){
+				if(!pending) return null;
+				pending = false;
+				return bar();
+			}
+			ahead = false;
+			final long b = (compression > 0)?aheadTime/compression:aheadTime;
+			if(pending && b != bucket){
+				// keeps the raw bar for the next call
+				ahead = true;
+				pending = false;
+				return bar();
+			}
+			if(!pending){
+				pending = true;
+				bucket = b;
+				open = aheadOpen;
+				high = aheadHigh;
+				low = aheadLow;
+				volume = 0;
+			}
+			if(aheadHigh > high) high = aheadHigh;
+			if(aheadLow < low) low = aheadLow;
+			close = aheadClose;
+			volume += aheadVolume;
+			time = aheadTime;
+		}
+	}
+	
+	/**
+	 * Reads the time of the last line without reading the whole file
+	 * @return the time of the last bar, before resampling
+	 */
+	public long lastTime() throws IOException {
+		final long size = channel.size();
+		final int length = (int)Math.min(size, 4096);
+		final ByteBuffer tail = ByteBuffer.allocate(length);
+		channel.read(tail, size-length);
+		final byte[] bytes = tail.array();
+		int end = length;
+		while(end > 0 && (bytes[end-1] == '\n' || bytes[end-1] == '\r')) end--;
+		int start = end;
+		while(start > 0 && bytes[start-1] != '\n') start--;
+		int tab = start;
+		while(tab < end && bytes[tab] != '\t') tab++;
+		return dates.decode(bytes, start, tab);
+	}
+	
+	private Bar bar(){
+		return new Bar(symbol, open, high, low, close, volume, 0, time);
+	}
+	
+	private boolean readBar() throws IOException {
+		while(readLine()){
+			if(lineLength == 0) continue;
+			int field = 0, start = 0;
+			for(int i = 0; i <= lineLength && field <= TRACK_RECORD.VOLUME; i++){
+				if(i == lineLength || line[i] == '\t'){
+					bounds[2*field] = start;
+					bounds[2*field+1] = i;
+					field++;
+					start = i+1;
+				}
+			}
+			if(field <= TRACK_RECORD.VOLUME){
+				throw new IOException("Line "+lineNumber+": expected "+(TRACK_RECORD.VOLUME+1)+" fields, found "+field);
+			}
+			aheadTime = dates.decode(line, bounds[2*TRACK_RECORD.DATE], bounds[2*TRACK_RECORD.DATE+1]);
+			aheadOpen = decimal(bounds[2*TRACK_RECORD.OPEN], bounds[2*TRACK_RECORD.OPEN+1]);
+			aheadHigh = decimal(bounds[2*TRACK_RECORD.HIGH], bounds[2*TRACK_RECORD.HIGH+1]);
+			aheadLow = decimal(bounds[2*TRACK_RECORD.LOW], bounds[2*TRACK_RECORD.LOW+1]);
+			aheadClose = decimal(bounds[2*TRACK_RECORD.CLOSE], bounds[2*TRACK_RECORD.CLOSE+1]);
+			aheadVolume = (long)decimal(bounds[2*TRACK_RECORD.VOLUME], bounds[2*TRACK_RECORD.VOLUME+1]);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Reads the next line into the line buffer, without the line terminator
+	 * @return false at the end of the file
+	 */
+	private boolean readLine() throws IOException {
+		lineLength = 0;
+		while(true){
+			if(!buffer.hasRemaining()){
+				if(eof) return lineLength > 0 && countLine();
+				buffer.clear();
+				if(channel.read(buffer) < 0){
+					eof = true;
+				}
+				buffer.flip();
+				continue;
+			}
+			final byte b = buffer.get();
+			if(b == '\n'){
+				return countLine();
+			} else if(b != '\r'){
+				if(lineLength == line.length){
+					line = Arrays.copyOf(line, line.length*2);
+				}
+				line[lineLength++] = b;
+			}
+		}
+	}
+	
+	private boolean countLine(){
+		lineNumber++;
+		return true;
+	}
+	
+	/**
+	 * Parses a decimal number using either '.' or ',' as separator
+	 */
+	private double decimal(int from, int to) throws IOException {
+		boolean negative = false;
+		long mantissa = 0;
+		int scale = -1;
+		int i = from;
+		if(i < to && (line[i] == '-' || line[i] == '+')){
+			negative = line[i] == '-';
+			i++;
+		}
+		if(i == to){
+			throw new IOException("Line "+lineNumber+": missing number");
+		}
+		for(; i < to; i++){
+			final byte b = line[i];
+			if(b >= '0' && b <= '9'){
+				if(mantissa > (Long.MAX_VALUE-9)/10){
+					return Double.parseDouble(new String(line, from, to-from, StandardCharsets.US_ASCII).replace(',', '.'));
+				}
+				mantissa = mantissa*10+(b-'0');
+				if(scale >= 0) scale++;
+			} else if((b == '.' || b == ',') && scale < 0){
+				scale = 0;
+			} else {
+				throw new IOException("Line "+lineNumber+": invalid number "+new String(line, from, to-from, StandardCharsets.US_ASCII));
+			}
+		}
+		double value = mantissa;
+		if(scale > 0){
+			value = (scale < POWERS.length)?value/POWERS[scale]:value/Math.pow(10, scale);
+		}
+		return negative?-value:value;
+	}
+	
+	private static final double[] POWERS = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	/**
+	 * Decodes the {@link TRACK_RECORD} date formats from bytes, telling them apart by length.
+	 * The epoch time of the last hour seen is cached, as consecutive bars share it. It is safe to share among threads.
+	 */
+	public static class DateDecoder {
+		public static final DateDecoder DEFAULT = new DateDecoder(ZoneId.systemDefault());
+		private final ZoneId zone;
+		private volatile Hour last = new Hour(-1, 0);
+		
+		public DateDecoder(ZoneId zone) {
+			this.zone = zone;
+		}
+		
+		public long decode(byte[] bytes, int from, int to) throws IOException {
+			final int length = to-from;
+			final int year, month, day;
+			int hour = 0, minute = 0, second = 0;
+			if(length == TRACK_RECORD.DAILY_SHORT_DATE_FORMAT.length()){
+				year = digits(bytes, from, 4);
+				month = digits(bytes, from+4, 2);
+				day = digits(bytes, from+6, 2);
+			} else if(length == TRACK_RECORD.DAILY_DATE_FORMAT.length()
+					|| length == TRACK_RECORD.INTRADAY_MINUTES_DATE_FORMAT.length()
+					|| length == TRACK_RECORD.INTRADAY_SECONDS_DATE_FORMAT.length()){
+				day = digits(bytes, from, 2);
+				month = digits(bytes, from+3, 2);
+				year = digits(bytes, from+6, 4);
+				if(length > TRACK_RECORD.DAILY_DATE_FORMAT.length()){
+					hour = digits(bytes, from+11, 2);
+					minute = digits(bytes, from+14, 2);
+				}
+				if(length == TRACK_RECORD.INTRADAY_SECONDS_DATE_FORMAT.length()){
+					second = digits(bytes, from+17, 2);
+				}
+			} else {
+				throw new IOException("Unknown date format "+new String(bytes, from, length, StandardCharsets.US_ASCII));
+			}
+			final long key = ((year*100L+month)*100L+day)*100L+hour;
+			Hour h = last;
+			if(h.key != key){
+				h = new Hour(key, LocalDateTime.of(year, month, day, hour, 0).atZone(zone).toInstant().toEpochMilli());
+				last = h;
+			}
+			return h.millis+minute*60_000L+second*1_000L;
+		}
+		
+		private static int digits(byte[] bytes, int from, int count) throws IOException {
+			int value = 0;
+			for(int i = from; i < from+count; i++){
+				final int d = bytes[i]-'0';
+				if(d < 0 || d > 9){
+					throw new IOException("Invalid date "+new String(bytes, from, count, StandardCharsets.US_ASCII));
+				}
+				value = value*10+d;
+			}
+			return value;
+		}
+		
+		private static class Hour {
+			private final long key, millis;
+			
+			private Hour(long key, long millis) {
+				this.key = key;
+				this.millis = millis;
+			}
+		}
+	}
+}
@@ -16,6 +16,7 @@
 package org.dynami.runtime.handlers;
 
 import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.time.LocalTime;
 import java.util.ArrayList;
@@ -27,6 +28,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntToDoubleFunction;
 
 import org.dynami.core.Event;
 import org.dynami.core.assets.Asset;
@@ -40,20 +42,22 @@ import org.dynami.core.data.Bar;
 import org.dynami.core.data.IData;
 import org.dynami.core.data.IVolatilityEngine;
 import org.dynami.core.data.vola.RogersSatchellVolatilityEngine;
+import org.dynami.core.services.ITraceService;
 import org.dynami.core.utils.DTime;
 import org.dynami.core.utils.DUtils;
-import org.dynami.runtime.IDataHandler;
-import org.dynami.runtime.Service;
 import org.dynami.runtime.data.BarData;
+import org.dynami.runtime.data.BarStore;
+import org.dynami.runtime.data.HistoryCache;
 import org.dynami.runtime.impl.Execution;
 import org.dynami.runtime.topics.Topics;
 import org.dynami.runtime.utils.BSEurOptionsUtils;
 import org.dynami.runtime.utils.EuropeanBlackScholes;
 import org.dynami.runtime.utils.JQuantLibUtils;
 import org.dynami.runtime.utils.LastPriceEngine;
+import org.dynami.runtime.utils.OptionChainPricer;
 
 @Config.Settings(name = "TextFileDataHandler settings", description = "bla bla bla")
-public class TextFileDataHandler extends Service implements IDataHandler {
+public class TextFileDataHandler extends ReplayDataHandler {
 	private final AtomicInteger idx = new AtomicInteger(0);
 	private static final SimpleDateFormat intradaySecondsFormat = new SimpleDateFormat(
 			TRACK_RECORD.INTRADAY_SECONDS_DATE_FORMAT);
@@ -68,6 +72,11 @@ public class TextFileDataHandler extends Service implements IDataHandler {
 	private IData historical;
 	private BarData computedHistorical = new BarData();
 	private final List<Option> options = new CopyOnWriteArrayList<>();
+	private OptionChainPricer pricer;
+	private Market market;
+	private Bar prevBar;
+	private TextBarReader reader;
+	private Bar aheadBar;
 
 	private Class<? extends IVolatilityEngine> volaEngineClass = RogersSatchellVolatilityEngine.class;
 
@@ -80,9 +89,21 @@ public class TextFileDataHandler extends Service implements IDataHandler {
 	@Config.Param(name = "Future Bid/Ask spread", description = "Bid/Ask spread expressed in points", step = 0.01)
 	private Double bidAskSpread = 5.0;
 
-	@Config.Param(name = "Data file", description = "Text file containing instrument historical data")
+	@Config.Param(name = "Data file", description = "Text or binary bar store file containing instrument historical data")
 	private File dataFile = new File("./resources/FTSEMIB_1M_2015_10_02.txt");//FTSEMIB_1M_2015_10_02 FTSEMIB_1M_2016_04_30
 
+	@Config.Param(name = "Streaming parser", description = "Read text data while replaying instead of loading it all at start")
+	private Boolean streaming = false;
+
+	@Config.Param(name = "History cache", description = "Keep parsed and resampled data on disk for next runs")
+	private Boolean historyCache = true;
+
+	@Config.Param(name = "History cache directory", description = "Directory of the history cache")
+	private File historyCacheDir = new File(System.getProperty("java.io.tmpdir"), "dynami-history");
+
+	@Config.Param(name = "History cache size", description = "Maximum size of the history cache in MB", min = 1, step = 1)
+	private Long historyCacheSize = 1024L;
+
 	@Config.Param(name = "Time compression", description = "Compression used for time frame", min = 1, max = 100, step = 1, type = Config.Type.TimeFrame)
 	private Long compressionRate = IData.TimeUnit.Day.millis() * 1;
 
@@ -95,6 +116,9 @@ public class TextFileDataHandler extends Service implements IDataHandler {
 	@Config.Param(name = "Enable option pricing", description = "Activate simulated option pricing")
 	private Boolean optionPricing = false;
 
+	@Config.Param(name = "Parallel option pricing", description = "Price option expiries concurrently")
+	private Boolean parallelOptionPricing = false;
+
 	@Config.Param(name = "Option Strike Step", description = "Number of points between one option strike and another", step = .1)
 	private Double optionStep = 500.;
 
@@ -115,7 +139,19 @@ public class TextFileDataHandler extends Service implements IDataHandler {
 	@Override
 	public boolean reset() {
 		idx.set(0);
+		prevBar = null;
 		computedHistorical = new BarData();
+		if (reader != null) {
+			// rewinds the stream, as idx does for loaded data
+			closeReader();
+			try {
+				reader = new TextBarReader(dataFile, symbol, compressionRate);
+				aheadBar = reader.next();
+			} catch (IOException e) {
+				Execution.Manager.msg().async(Topics.INTERNAL_ERRORS.topic, e);
+				return false;
+			}
+		}
 		return true;
 	}
 
@@ -126,13 +162,36 @@ public class TextFileDataHandler extends Service implements IDataHandler {
 			return false;
 		}
 		volaEngine = volaEngineClass.getDeclaredConstructor().newInstance();
-		historical = restorePriceData(dataFile);
-		historical.setAutoCompressionRate();
-		historical = historical.changeCompression(compressionRate);
+		final Bar firstBar;
+		final long lastTime;
+		if(streaming && !BarStore.isBarStore(dataFile)){
+			closeReader();
+			reader = new TextBarReader(dataFile, symbol, compressionRate);
+			aheadBar = reader.next();
+			if(aheadBar == null){
+				Execution.Manager.msg().async(Topics.INTERNAL_ERRORS.topic, new IllegalStateException("File ["+dataFile.getAbsolutePath()+"] contains no data"));
+				return false;
+			}
+			firstBar = aheadBar;
+			lastTime = reader.lastTime();
+		} else {
+			if(historyCache){
+				final HistoryCache cache = HistoryCache.of(historyCacheDir, historyCacheSize*1024*1024);
+				historical = cache.get(dataFile, symbol, compressionRate, this::loadHistory);
+				msg.async(Topics.TRACE.topic, new ITraceService.Trace(ITraceService.Trace.Type.Debug, DTime.Clock.getTime(), "TextFileDataHandler", cache.toString()));
+			} else {
+				historical = loadHistory();
+			}
+			if(historical == null){
+				return false;
+			}
+			firstBar = historical.get(0);
+			lastTime = historical.last().time;
+		}
 
 		msg.forceSync(true);
 
-		Market market = new Market("IDEM", "IDEM", Locale.ITALY, LocalTime.of(9, 0, 0), LocalTime.of(17, 25, 0));
+		market = new Market("IDEM", "IDEM", Locale.ITALY, LocalTime.of(9, 0, 0), LocalTime.of(17, 25, 0));
 
 		Asset.Index index = new Asset.Index(Asset.Family.Index, "^FTSEMIB", "IT0000000001", "FTSEMIB Index", 1, .01, market);
 
@@ -141,14 +200,12 @@ public class TextFileDataHandler extends Service implements IDataHandler {
 
 		msg.async(Topics.INSTRUMENT.topic, ftsemib);
 
-		final Bar lastBar = historical.last();
-		final Bar firstBar = historical.get(0);
 		if (optionPricing) {
 			double firstStrike = (firstBar.close % optionStep > optionStep / 2)
 					? firstBar.close - firstBar.close % optionStep
 					: firstBar.close + (optionStep - firstBar.close % optionStep);
 
-			long[] expirations = computeExpirationInPeriod(firstBar.time, lastBar.time);
+			long[] expirations = computeExpirationInPeriod(firstBar.time, lastTime);
 
 			for (int i = 0; i <= optionStrikes / 2; i++) {
 				for (int j = 0; j < expirations.length; j++) {
@@ -176,92 +233,126 @@ public class TextFileDataHandler extends Service implements IDataHandler {
 					}
 				}
 			}
+			pricer = new OptionChainPricer(options).parallel(parallelOptionPricing);
 		}
 
 
+		if(Execution.Manager.isBacktest()) return true;
+
 		new Thread(new Runnable() {
 			@Override
 			public void run() {
-				int OPEN = 0, CLOSE = 1;
-				Bar prevBar = null, currentBar, nextBar;
 				while (isStarted.get()) {
 					if (isRunning.get()) {
-						
-						if (idx.get() >= historical.size()) {
-							System.out.println("No more data!!! Give X or XX command to print final status");
-							msg.sync(Topics.STRATEGY_EVENT.topic, Event.Factory.noMoreDataEvent(symbol));
-							break;
-						}
-						currentBar = historical.get(idx.getAndIncrement());
-						computedHistorical.append(currentBar);
-
-						if (historical.size() > idx.get()) {
-							nextBar = historical.get(idx.get());
-						} else {
-							nextBar = null;
-						}
-						try {
-							double price = currentBar.close;
-							for (int i = 0; i < 2; i++) {
-								if (i == OPEN) {
-									price = currentBar.open;
-								} else if (i == CLOSE) {
-									price = currentBar.close;
-								}
-
-								if(optionPricing){
-									optionsPricing(msg, market, compressionRate, computedHistorical, volaEngine, options,
-											optionStep, currentBar.time, price, bidAskSpread, riskfreeRate);
-								}
-								
-								Book.Orders bid = new Book.Orders(currentBar.symbol, currentBar.time, Side.BID, 1, price - bidAskSpread / 2, 100);
-								msg.async(Topics.BID_ORDERS_BOOK_PREFIX.topic + currentBar.symbol, bid);
-								msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.createOnTickEvent(currentBar.symbol, bid));
-								
-								Book.Orders ask = new Book.Orders(currentBar.symbol, currentBar.time, Side.ASK, 1, price + bidAskSpread / 2, 100);
-								msg.async(Topics.ASK_ORDERS_BOOK_PREFIX.topic + currentBar.symbol, ask);
-								msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.createOnTickEvent(currentBar.symbol, ask));
-								
-								if (i == OPEN) {
-									DTime.Clock.update(currentBar.time - compressionRate);
-									if (prevBar != null && currentBar.time / DUtils.DAY_MILLIS > prevBar.time / DUtils.DAY_MILLIS) {
-										msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.create(currentBar.symbol, DTime.Clock.getTime(),
-												currentBar, Event.Type.OnBarOpen, Event.Type.OnDayOpen));
-									} else {
-										msg.async(Topics.STRATEGY_EVENT.topic,
-												Event.Factory.create(currentBar.symbol, DTime.Clock.getTime(), currentBar, Event.Type.OnBarOpen));
-									}
-								} else if (i == CLOSE) {
-									DTime.Clock.update(currentBar.time);
-									if (nextBar == null || currentBar.time / DUtils.DAY_MILLIS < nextBar.time / DUtils.DAY_MILLIS) {
-										msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.create(currentBar.symbol, DTime.Clock.getTime(),
-												currentBar, Event.Type.OnBarClose, Event.Type.OnDayClose));
-									} else {
-										msg.async(Topics.STRATEGY_EVENT.topic,
-												Event.Factory.create(currentBar.symbol, DTime.Clock.getTime(), currentBar, Event.Type.OnBarClose));
-									}
-								}
-
-								try {
-									TimeUnit.MILLISECONDS.sleep(clockFrequency.longValue() / 2);
-								} catch (InterruptedException e) {}
-							}
-							
-						} catch(RuntimeException e){
-							Execution.Manager.msg().async(Topics.INTERNAL_ERRORS.topic, e);
-						}
-						
-						prevBar = currentBar;
+						if(!next()) break;
 					} else {
 						try { Thread.sleep(clockFrequency.longValue()); } catch (InterruptedException e) {}
 					}
 				}
+				// the reader belongs to this thread, dispose() only asks it to stop
+				closeReader();
 				System.out.println("TextFileDataHandler.init() closing TextFileDataHandler thread");
 			}
 		}, "TextFileDataHandler").start();
 		return true;
 	}
 
+	/**
+	 * Replays the next bar, publishing books and events for its open and its close.
+	 */
+	@Override
+	public boolean next() {
+		final int OPEN = 0, CLOSE = 1;
+		final Bar currentBar, nextBar;
+		// read once, reset() and init() may replace the field
+		final TextBarReader reader = this.reader;
+		if (!isStarted.get()) {
+			// disposed: the replaying thread releases the reader itself
+			closeReader();
+			return false;
+		}
+		if (reader == null && historical == null) {
+			return false;
+		}
+		if (reader != null) {
+			currentBar = aheadBar;
+			if (currentBar != null) {
+				try {
+					aheadBar = reader.next();
+				} catch (IOException e) {
+					Execution.Manager.msg().async(Topics.INTERNAL_ERRORS.topic, e);
+					aheadBar = null;
+				}
+			}
+			nextBar = aheadBar;
+		} else {
+			currentBar = (idx.get() < historical.size()) ? historical.get(idx.get()) : null;
+			nextBar = (idx.get()+1 < historical.size()) ? historical.get(idx.get()+1) : null;
+		}
+		if (currentBar == null) {
+			System.out.println("No more data!!! Give X or XX command to print final status");
+			msg.sync(Topics.STRATEGY_EVENT.topic, Event.Factory.noMoreDataEvent(symbol));
+			return false;
+		}
+		idx.incrementAndGet();
+		computedHistorical.append(currentBar);
+		try {
+			double price = currentBar.close;
+			for (int i = 0; i < 2; i++) {
+				if (i == OPEN) {
+					price = currentBar.open;
+				} else if (i == CLOSE) {
+					price = currentBar.close;
+				}
+
+				if(optionPricing){
+					optionsPricing(msg, this::historicalVolatility, pricer,
+							optionStep, currentBar.time, price, bidAskSpread, riskfreeRate);
+				}
+				
+				Book.Orders bid = new Book.Orders(currentBar.symbol, currentBar.time, Side.BID, 1, price - bidAskSpread / 2, 100);
+				msg.async(Topics.BID_ORDERS_BOOK_PREFIX.topic + currentBar.symbol, bid);
+				msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.createOnTickEvent(currentBar.symbol, bid));
+				
+				Book.Orders ask = new Book.Orders(currentBar.symbol, currentBar.time, Side.ASK, 1, price + bidAskSpread / 2, 100);
+				msg.async(Topics.ASK_ORDERS_BOOK_PREFIX.topic + currentBar.symbol, ask);
+				msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.createOnTickEvent(currentBar.symbol, ask));
+				
+				if (i == OPEN) {
+					DTime.Clock.update(currentBar.time - compressionRate);
+					if (prevBar != null && currentBar.time / DUtils.DAY_MILLIS > prevBar.time / DUtils.DAY_MILLIS) {
+						msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.create(currentBar.symbol, DTime.Clock.getTime(),
+								currentBar, Event.Type.OnBarOpen, Event.Type.OnDayOpen));
+					} else {
+						msg.async(Topics.STRATEGY_EVENT.topic,
+								Event.Factory.create(currentBar.symbol, DTime.Clock.getTime(), currentBar, Event.Type.OnBarOpen));
+					}
+				} else if (i == CLOSE) {
+					DTime.Clock.update(currentBar.time);
+					if (nextBar == null || currentBar.time / DUtils.DAY_MILLIS < nextBar.time / DUtils.DAY_MILLIS) {
+						msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.create(currentBar.symbol, DTime.Clock.getTime(),
+								currentBar, Event.Type.OnBarClose, Event.Type.OnDayClose));
+					} else {
+						msg.async(Topics.STRATEGY_EVENT.topic,
+								Event.Factory.create(currentBar.symbol, DTime.Clock.getTime(), currentBar, Event.Type.OnBarClose));
+					}
+				}
+
+				if(!Execution.Manager.isBacktest()){
+					try {
+						TimeUnit.MILLISECONDS.sleep(clockFrequency.longValue() / 2);
+					} catch (InterruptedException e) {}
+				}
+			}
+			
+		} catch(RuntimeException e){
+			Execution.Manager.msg().async(Topics.INTERNAL_ERRORS.topic, e);
+		}
+		
+		prevBar = currentBar;
+		return true;
+	}
+
 	@Override
 	public boolean start() {
 		isRunning.set(true);
@@ -289,6 +380,8 @@ public class TextFileDataHandler extends Service implements IDataHandler {
 	public boolean dispose() {
 		isStarted.set(false);
 		isRunning.set(false);
+		// in live mode the replay thread is still reading, it closes the reader when it sees the handler disposed
+		if(Execution.Manager.isBacktest()) closeReader();
 		System.out.println("TextFileDataHandler.dispose()");
 		return true;
 	}
@@ -317,42 +410,99 @@ public class TextFileDataHandler extends Service implements IDataHandler {
 		return true;
 	}
 
-	private static void optionsPricing(final IMsg msg, final Market market, final long compresssionRate,
-			final BarData data, final IVolatilityEngine volaEngine, final List<Option> options, final double optionStep,
-			final long time, final double spot, final double bidAskSpread, final double riskfreeRate) {
-		for (Option o : options) {
-			if (o.isExpired(time)) {
-				options.remove(o);
-				continue;
+	/**
+	 * Annualized volatility of the replayed bars over the given window, computed by the engine once per bar
+	 * for all the options sharing the window.
+	 */
+	private double historicalVolatility(final int daysLeft) {
+		final double factor = volaEngine.annualizationFactor(compressionRate, daysLeft, market);
+		return computedHistorical.cachedVolatility(volaEngine, daysLeft) * factor;
+	}
+
+	private static void optionsPricing(final IMsg msg, final IntToDoubleFunction volatility, final OptionChainPricer pricer,
+			final double optionStep, final long time, final double spot, final double bidAskSpread, final double riskfreeRate) {
+		pricer.price(time, spot, optionStep, bidAskSpread, riskfreeRate, volatility);
+		
+		for (int i = 0; i < pricer.size(); i++) {
+			if (!pricer.isPriced(i)) continue;
+			final String optionSymbol = pricer.symbol(i);
+			Book.Orders bid = new Book.Orders(optionSymbol, time, Side.BID, 1, pricer.bid(i), 100);
+			msg.async(Topics.BID_ORDERS_BOOK_PREFIX.topic + optionSymbol, bid);
+
+			Book.Orders ask = new Book.Orders(optionSymbol, time, Side.ASK, 1, pricer.ask(i), 100);
+			msg.async(Topics.ASK_ORDERS_BOOK_PREFIX.topic + optionSymbol, ask);
+		}
+	}
+
+	/**
+	 * Converts a text file in {@link TRACK_RECORD} layout to a binary {@link BarStore}, loaded later with no parsing.
+	 * @param text
+	 * @param binary destination, replaced if it exists
+	 * @param symbol
+	 */
+	public static void convert(final File text, final File binary, final String symbol) throws Exception {
+		final BarData data = restorePriceData(text, symbol);
+		if(data == null){
+			throw new IllegalStateException("Unable to read ["+text.getAbsolutePath()+"]");
+		}
+		BarStore.write(binary, symbol, data);
+	}
+	
+	/**
+	 * Usage: TextFileDataHandler &lt;text file&gt; [binary file] [symbol]
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length == 0){
+			System.out.println("Usage: TextFileDataHandler <text file> [binary file] [symbol]");
+			return;
+		}
+		final File text = new File(args[0]);
+		final File binary = new File((args.length > 1)?args[1]:args[0].replaceFirst("\\.[^.\\\\/]*$", "")+BarStore.EXTENSION);
+		final String symbol = (args.length > 2)?args[2]:"FTSEMIB";
+		final long start = System.currentTimeMillis();
+		convert(text, binary, symbol);
+		System.out.println("TextFileDataHandler converted ["+text+"] to ["+binary+"] in "+(System.currentTimeMillis()-start)+"ms");
+	}
+
+	/**
+	 * Reads the data file and resamples it at the configured compression
+	 * @return null if the data can't be used, after publishing the reason
+	 */
+	private BarData loadHistory() throws Exception {
+		BarData data;
+		if(BarStore.isBarStore(dataFile)){
+			try (BarStore store = BarStore.open(dataFile)) {
+				if(!store.symbol().equals(symbol)){
+					Execution.Manager.msg().async(Topics.INTERNAL_ERRORS.topic, new IllegalStateException("File ["+dataFile.getAbsolutePath()+"] contains "+store.symbol()+" bars, not "+symbol));
+					return null;
+				}
+				data = store.load();
 			}
-			int daysLeft = o.daysToExpiration(time);
-//			int daysLeft = 20;
-			int strikesFromAtm = 1+(int)(Math.abs(spot - o.strike) / optionStep);
-			
-//			if(strikesFromAtm>6) return;
-			
-			final double factor = volaEngine.annualizationFactor(compresssionRate, daysLeft, market);
-			final double vola = data.getVolatility(volaEngine, daysLeft) * factor;
-
-			if (vola > 0) {
-//				System.out.println("TextFileDataHandler.optionsPricing() "+spot);
-				double optBidPrice = EuropeanBlackScholes.price(o.type, (spot - ((bidAskSpread / 2) * strikesFromAtm)),
-						o.strike, vola, (double) daysLeft / DUtils.YEAR_DAYS, riskfreeRate);
-				double optAskPrice = EuropeanBlackScholes.price(o.type, (spot + ((bidAskSpread / 2) * strikesFromAtm)),
-						o.strike, vola, (double) daysLeft / DUtils.YEAR_DAYS, riskfreeRate);
-
-				Book.Orders bid = new Book.Orders(o.symbol, time, Side.BID, 1, optBidPrice, 100);
-				msg.async(Topics.BID_ORDERS_BOOK_PREFIX.topic + o.symbol, bid);
-//				msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.create(o.symbol, bid));
-
-				Book.Orders ask = new Book.Orders(o.symbol, time, Side.ASK, 1, optAskPrice, 100);
-				msg.async(Topics.ASK_ORDERS_BOOK_PREFIX.topic + o.symbol, ask);
-//				msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.create(o.symbol, ask));
+		} else {
+			data = restorePriceData(dataFile, symbol);
+		}
+		if(data == null) return null;
+		data.setAutoCompressionRate();
+		final BarData resampled = (BarData)data.changeCompression(compressionRate);
+		if(resampled == null){
+			Execution.Manager.msg().async(Topics.INTERNAL_ERRORS.topic, new IllegalStateException("File ["+dataFile.getAbsolutePath()+"] has "
+					+data.getCompression()+"ms bars, they can't be resampled at the requested "+compressionRate+"ms compression"));
+		}
+		return resampled;
+	}
+
+	private synchronized void closeReader() {
+		if (reader != null) {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				e.printStackTrace();
 			}
+			reader = null;
 		}
 	}
 
-	private BarData restorePriceData(final File f) throws Exception {
+	private static BarData restorePriceData(final File f, final String symbol) throws Exception {
 		SimpleDateFormat dateParser = null;
 //		BufferedReader reader = null;
 		Scanner scanner = new Scanner(f);
@@ -465,6 +615,46 @@ public class TextFileDataHandler extends Service implements IDataHandler {
 		this.compressionRate = compressionRate;
 	}
 
+	public Boolean isStreaming() {
+		return streaming;
+	}
+
+	public void setStreaming(Boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	public Boolean isHistoryCache() {
+		return historyCache;
+	}
+
+	public void setHistoryCache(Boolean historyCache) {
+		this.historyCache = historyCache;
+	}
+
+	public File getHistoryCacheDir() {
+		return historyCacheDir;
+	}
+
+	public void setHistoryCacheDir(File historyCacheDir) {
+		this.historyCacheDir = historyCacheDir;
+	}
+
+	public Long getHistoryCacheSize() {
+		return historyCacheSize;
+	}
+
+	public void setHistoryCacheSize(Long historyCacheSize) {
+		this.historyCacheSize = historyCacheSize;
+	}
+
+	public Boolean isParallelOptionPricing() {
+		return parallelOptionPricing;
+	}
+
+	public void setParallelOptionPricing(Boolean parallelOptionPricing) {
+		this.parallelOptionPricing = parallelOptionPricing;
+	}
+
 	public Double getOptionStep() {
 		return optionStep;
 	}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.handlers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.dynami.runtime.handlers.TrasiTestDataHandler.TrasiBookSpot;
+
+/**
+ * Reads the book table once through a single forward only cursor, ordered by time and ticker,
+ * and returns the rows grouped by time.
+ * <br>Only points in time having a book for both the future and at least one option are returned.
+ * @author Atria
+ */
+class TrasiBookCursor implements AutoCloseable {
+	private static final int FETCH_SIZE = 4096;
+	private final PreparedStatement statement;
+	private final ResultSet rs;
+	private final String future;
+	private boolean hasRow;
+	
+	/**
+	 * @param conn
+	 * @param future ticker of the future
+	 * @param options tickers of the options
+	 * @param from first time, inclusive
+	 */
+	TrasiBookCursor(Connection conn, String future, List<String> options, long from) throws SQLException {
+		this.future = future;
+		final StringBuilder sql = new StringBuilder("select ticker, time, bid, ask, bid_qt, ask_qt from book where time >= ? and ticker in (?");
+		for(int i = 0; i < options.size(); i++){
+			sql.append(", ?");
+		}
+		sql.append(") order by time, ticker");
+		statement = conn.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		try {
+			statement.setFetchSize(FETCH_SIZE);
+			statement.setLong(1, from);
+			statement.setString(2, future);
+			for(int i = 0; i < options.size(); i++){
+				statement.setString(3+i, options.get(i));
+			}
+			rs = statement.executeQuery();
+			hasRow = rs.next();
+		} catch (SQLException e) {
+			statement.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * @return books of the next point in time, null when the table is over
+	 */
+	Group next() throws SQLException {
+		final Group group = new Group();
+		return next(group)?group:null;
+	}
+	
+	/**
+	 * Fills the group with the books of the next point in time, reusing its rows
+	 * @return false when the table is over
+	 */
+	boolean next(Group group) throws SQLException {
+		while(hasRow){
+			final long time = rs.getLong(2);
+			group.clear(time);
+			do {
+				final TrasiBookSpot book = group.spare();
+				book.setTicker(rs.getString(1));
+				book.setBid(rs.getDouble(3));
+				book.setAsk(rs.getDouble(4));
+				book.setBidVolume(rs.getInt(5));
+				book.setAskVolume(rs.getInt(6));
+				if(future.equals(book.getTicker())){
+					group.future = book;
+				} else {
+					group.options.add(book);
+				}
+				hasRow = rs.next();
+			} while(hasRow && rs.getLong(2) == time);
+			
+			if(group.future != null && !group.options.isEmpty()){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	public void close() throws SQLException {
+		try {
+			rs.close();
+		} finally {
+			statement.close();
+		}
+	}
+	
+	/**
+	 * Books sharing the same time. Rows are recycled when the group is filled again.
+	 */
+	static class Group {
+		long time;
+		TrasiBookSpot future;
+		final List<TrasiBookSpot> options = new ArrayList<>();
+		private final List<TrasiBookSpot> rows = new ArrayList<>();
+		private int used = 0;
+		
+		private void clear(long time){
+			this.time = time;
+			future = null;
+			options.clear();
+			used = 0;
+		}
+		
+		private TrasiBookSpot spare(){
+			if(used == rows.size()){
+				rows.add(new TrasiBookSpot());
+			}
+			final TrasiBookSpot book = rows.get(used++);
+			if(book.getTime() == null){
+				book.setTime(new Date(time));
+			} else {
+				book.getTime().setTime(time);
+			}
+			return book;
+		}
+	}
+}
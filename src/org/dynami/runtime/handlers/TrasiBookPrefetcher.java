@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.handlers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two stages pipeline over a {@link TrasiBookCursor}: a reader thread decodes the next groups of books
+ * while the replay thread publishes the current one.
+ * <br>Groups are recycled through a free list, so at most depth groups are ever allocated.
+ * @author Atria
+ */
+class TrasiBookPrefetcher implements AutoCloseable {
+	private static final TrasiBookCursor.Group END = new TrasiBookCursor.Group();
+	private final TrasiBookCursor cursor;
+	private final BlockingQueue<TrasiBookCursor.Group> ready;
+	private final BlockingQueue<TrasiBookCursor.Group> free;
+	private final Thread reader;
+	private final AtomicLong readerStalls = new AtomicLong(0);
+	private final AtomicLong emitterStalls = new AtomicLong(0);
+	private volatile Exception error;
+	private volatile boolean closed = false;
+	private final AtomicBoolean cursorClosed = new AtomicBoolean(false);
+	private TrasiBookCursor.Group current;
+	
+	/**
+	 * @param cursor owned by the prefetcher, closed with it
+	 * @param depth number of groups read ahead
+	 */
+	TrasiBookPrefetcher(TrasiBookCursor cursor, int depth) {
+		this.cursor = cursor;
+		this.ready = new ArrayBlockingQueue<>(depth+1);
+		this.free = new ArrayBlockingQueue<>(depth);
+		for(int i = 0; i < depth; i++){
+			free.add(new TrasiBookCursor.Group());
+		}
+		reader = new Thread(this::read, "TrasiTestDataHandler.reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+	
+	private void read(){
+		try {
+			while(!closed){
+				TrasiBookCursor.Group group = free.poll();
+				if(group == null){
+					readerStalls.incrementAndGet();
+					group = free.take();
+				}
+				if(!cursor.next(group)){
+					break;
+				}
+				ready.put(group);
+			}
+		} catch (InterruptedException e) {
+			return;
+		} catch (Exception e) {
+			error = e;
+		} finally {
+			// a reader outliving close() releases the cursor once out of JDBC
+			if(closed) closeCursor();
+		}
+		try {
+			ready.put(END);
+		} catch (InterruptedException e) {}
+	}
+	
+	/**
+	 * Returns the next group, giving back the previous one to the reader
+	 * @return null when the table is over
+	 * @throws Exception the error that stopped the reader, thrown once, further calls return null
+	 */
+	TrasiBookCursor.Group next() throws Exception {
+		if(current != null){
+			free.offer(current);
+			current = null;
+		}
+		TrasiBookCursor.Group group = ready.poll();
+		if(group == null){
+			emitterStalls.incrementAndGet();
+			group = ready.take();
+		}
+		if(group == END){
+			// keeps the end mark for further calls
+			ready.offer(END);
+			final Exception e = error;
+			if(e != null){
+				error = null;
+				throw e;
+			}
+			return null;
+		}
+		current = group;
+		return group;
+	}
+	
+	/**
+	 * @return groups read and not yet replayed
+	 */
+	int depth(){
+		final int size = ready.size();
+		return (ready.contains(END))?size-1:size;
+	}
+	
+	/**
+	 * @return number of times the reader waited for the replay to free a group
+	 */
+	long readerStalls(){
+		return readerStalls.get();
+	}
+	
+	/**
+	 * @return number of times the replay waited for the reader
+	 */
+	long emitterStalls(){
+		return emitterStalls.get();
+	}
+	
+	@Override
+	public void close() {
+		closed = true;
+		reader.interrupt();
+		try {
+			reader.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			// the reader, once out of JDBC, closes the cursor itself
+			Thread.currentThread().interrupt();
+		}
+		if(!reader.isAlive()){
+			closeCursor();
+		}
+	}
+
+	private void closeCursor(){
+		if(cursorClosed.compareAndSet(false, true)){
+			try {
+				cursor.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return "TrasiBookPrefetcher [depth=" + depth() + ", readerStalls=" + readerStalls.get() + ", emitterStalls=" + emitterStalls.get() + "]";
+	}
+}
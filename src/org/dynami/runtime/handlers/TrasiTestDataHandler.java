@@ -18,8 +18,10 @@ package org.dynami.runtime.handlers;
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -44,8 +46,6 @@ import org.dynami.orm.Criteria;
 import org.dynami.orm.DAO;
 import org.dynami.orm.DAO.IEntity;
 import org.dynami.orm.DAO.IField;
-import org.dynami.runtime.IDataHandler;
-import org.dynami.runtime.Service;
 import org.dynami.runtime.impl.Execution;
 import org.dynami.runtime.topics.Topics;
 import org.dynami.runtime.utils.BSEurOptionsUtils;
@@ -54,7 +54,7 @@ import org.dynami.runtime.utils.JQuantLibUtils;
 import org.dynami.runtime.utils.LastPriceEngine;
 
 @Config.Settings(description="Parameters for executing stored trasi test data")
-public class TrasiTestDataHandler extends Service implements IDataHandler {
+public class TrasiTestDataHandler extends ReplayDataHandler {
 	private static final SimpleDateFormat DF = new SimpleDateFormat("dd/MM/yyyy");
 	private final AtomicInteger idx = new AtomicInteger(0);
 	private final AtomicBoolean isStarted = new AtomicBoolean(true);
@@ -62,6 +62,12 @@ public class TrasiTestDataHandler extends Service implements IDataHandler {
 	private final IMsg msg = Execution.Manager.msg();
 	private Class<? extends IVolatilityEngine> volaEngineClass = RogersSatchellVolatilityEngine.class;
 	private Connection conn;
+	private final AtomicLong prevTime = new AtomicLong(0);
+	private TrasiAsset.Future fut;
+	private List<TrasiAsset.Option> options;
+	private TrasiBookCursor cursor;
+	private TrasiBookPrefetcher prefetcher;
+	private final TrasiBookCursor.Group group = new TrasiBookCursor.Group();
 
 	@Config.Param(name = "Symbol", description = "Main symbol")
 	private String symbol = "FTSEMIB";
@@ -78,6 +84,9 @@ public class TrasiTestDataHandler extends Service implements IDataHandler {
 	@Config.Param(name = "Option Expire Date", description = "Select option chain")
 	private Date expire = parse("20/10/2017");
 
+	@Config.Param(name = "Prefetch depth", description = "Points in time read ahead from the database while replaying, zero to read on the replay thread", min = 0, max = 10000, step = 1)
+	private Integer prefetchDepth = 64;
+
 	@Config.Param(name = "Time compression", description = "Compression used for time frame", min = 1, max = 100, step = 1, type = Config.Type.TimeFrame)
 	private Long compressionRate = IData.TimeUnit.Minute.millis() * 5;
 
@@ -95,6 +104,16 @@ public class TrasiTestDataHandler extends Service implements IDataHandler {
 	@Override
 	public boolean reset() {
 		idx.set(0);
+		prevTime.set(0);
+		if(cursor != null || prefetcher != null){
+			// rewinds the replay
+			try {
+				openCursor();
+			} catch (SQLException e) {
+				Execution.Manager.msg().async(Topics.INTERNAL_ERRORS.topic, e);
+				return false;
+			}
+		}
 		return true;
 	}
 
@@ -113,22 +132,14 @@ public class TrasiTestDataHandler extends Service implements IDataHandler {
 		DAO.$.setup(DAO.SqlDialect.Sqlite,new DAO.SingleConnectionDataSource(conn));
 		
 		msg.forceSync(true);
-		final AtomicLong prevTime = new AtomicLong(0);
 		final Market market = new Market("IDEM", "IDEM", Locale.ITALY, LocalTime.of(9, 0, 0), LocalTime.of(17, 25, 0));
 		final Asset.Index index = new Asset.Index(Asset.Family.Index, "^FTSEMIB", "IT0000000001", "FTSEMIB Index", 1, .01, market);
 		
-		final TrasiAsset.Future fut = DAO.$.selectFirst(new Criteria<>(TrasiAsset.Future.class).andEqualsGreaterThan("expire", expire).orderBy("expire"));
+		fut = DAO.$.selectFirst(new Criteria<>(TrasiAsset.Future.class).andEqualsGreaterThan("expire", expire).orderBy("expire"));
 		
-		final List<TrasiAsset.Option> options = DAO.$.select(new Criteria<>(TrasiAsset.Option.class).andEquals("expire", expire));
+		options = DAO.$.select(new Criteria<>(TrasiAsset.Option.class).andEquals("expire", expire));
 		
-		final List<Long> times = DAO.$.numbers(
-				Long.class, 
-				" select distinct ob.time as 'value' "
-				+ "from book ob , options o "
-				+ "where o.expire = ? "
-				+ "and o.ticker = ob.ticker "
-				+ "and ob.time >= ?", 
-				expire, startFrom);
+		openCursor();
 		
 		final Asset.Future future = new Asset.Future(fut.getTicker(), fut.getIsin(), fut.getName(), fut.getPointValue(), .05, marginRequired, LastPriceEngine.MidPrice, market, fut.getExpire().getTime(), 1L, index, () -> 1.);
 		msg.sync(Topics.INSTRUMENT.topic, future);
@@ -148,72 +159,13 @@ public class TrasiTestDataHandler extends Service implements IDataHandler {
 //		msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.create(fBook.ticker, DTime.Clock.getTime(), firstBar, Event.Type.OnBarClose));
 		System.out.println("TrasiTestDataHandler.init()");
 		
+		if(Execution.Manager.isBacktest()) return true;
+
 		new Thread(new Runnable() {
 			@Override
 			public void run() {
 				while (isStarted.get()) {
-					if (isRunning.get()) {
-						try {
-							DAO.$.setup(DAO.SqlDialect.Sqlite,new DAO.SingleConnectionDataSource(conn));
-							if (idx.get() >= times.size()) {
-								System.out.println("No more data!!! Give X or XX command to print final status");
-								msg.sync(Topics.STRATEGY_EVENT.topic, Event.Factory.noMoreDataEvent(symbol));
-								break;
-							}
-							final long time = times.get(idx.getAndIncrement()).longValue();
-							final TrasiBookSpot fBook = DAO.$.selectFirst(new Criteria<>(TrasiBookSpot.class).andEquals("ticker", fut.getTicker()).andEquals("time", time));
-							
-							double fPrice = fBook.avgPrice(); 
-							DTime.Clock.update(time);
-							// if no future price available skip elaboration
-							if(fPrice == 0) continue;
-							
-							/**
-							 * Fire book prices for futures
-							 */
-							Book.Orders fBid = new Book.Orders(fBook.ticker, time, Side.BID, 1, fBook.bid, fBook.bidVolume);
-							msg.async(Topics.BID_ORDERS_BOOK_PREFIX.topic + fBook.ticker, fBid);
-							msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.createOnTickEvent(fBook.ticker, fBid));
-							
-							Book.Orders fAsk = new Book.Orders(fBook.ticker, time, Side.ASK, 1, fBook.ask, fBook.askVolume);
-							msg.async(Topics.ASK_ORDERS_BOOK_PREFIX.topic + fBook.ticker, fAsk);
-							msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.createOnTickEvent(fBook.ticker, fAsk));
-
-							/**
-							 * Fire book prices for options
-							 */
-							for(TrasiAsset.Option opt : options) {
-								final TrasiBookSpot oBook = DAO.$.selectFirst(new Criteria<>(TrasiBookSpot.class).andEquals("ticker", opt.getTicker()).andEquals("time", time));
-								if(oBook != null && oBook.bid > 0) {
-									Book.Orders oBid = new Book.Orders(oBook.ticker, time, Side.BID, 1, oBook.bid, oBook.bidVolume);
-									msg.async(Topics.BID_ORDERS_BOOK_PREFIX.topic + oBook.ticker, oBid);
-									msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.createOnTickEvent(oBook.ticker, oBid));
-								}
-//								
-								if(oBook != null && oBook.ask > 0) {
-									Book.Orders oAsk = new Book.Orders(oBook.ticker, time, Side.ASK, 1, oBook.ask, oBook.askVolume);
-									msg.async(Topics.ASK_ORDERS_BOOK_PREFIX.topic + oBook.ticker, oAsk);
-									msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.createOnTickEvent(oBook.ticker, oAsk));
-								}
-							}
-							
-							/**
-							 * Fire strategy on bar close events
-							 */
-							final Bar current = new Bar(fBook.ticker, fPrice, fPrice, fPrice, fPrice, 0, time);
-							if (prevTime.get() == 0 || (time / DUtils.DAY_MILLIS) > (prevTime.get() / DUtils.DAY_MILLIS)) {
-								msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.create(fBook.ticker, DTime.Clock.getTime(),
-										current, Event.Type.OnBarClose, Event.Type.OnDayClose));
-							} else {
-								msg.async(Topics.STRATEGY_EVENT.topic,
-										Event.Factory.create(fBook.ticker, DTime.Clock.getTime(), current, Event.Type.OnBarClose));
-							}
-								
-							prevTime.set(time);
-						} catch(Exception e){
-							Execution.Manager.msg().async(Topics.INTERNAL_ERRORS.topic, e);
-						}
-					}
+					if (isRunning.get() && !next()) break;
 					try { Thread.sleep(clockFrequency.longValue()); } catch (InterruptedException e) {}
 				}
 				System.out.println("TrasiTestDataHandler::init() closing TextFileDataHandler thread");
@@ -222,6 +174,116 @@ public class TrasiTestDataHandler extends Service implements IDataHandler {
 		return true;
 	}
 
+	/**
+	 * Opens the cursor streaming the books of the future and of the option chain, from the starting date
+	 */
+	private void openCursor() throws SQLException {
+		closeCursor();
+		final List<String> tickers = new ArrayList<>(options.size());
+		for(TrasiAsset.Option opt : options) {
+			tickers.add(opt.getTicker());
+		}
+		final TrasiBookCursor c = new TrasiBookCursor(conn, fut.getTicker(), tickers, startFrom.getTime());
+		if(prefetchDepth > 0){
+			prefetcher = new TrasiBookPrefetcher(c, prefetchDepth);
+		} else {
+			cursor = c;
+		}
+	}
+
+	private void closeCursor() {
+		try {
+			if(prefetcher != null){
+				prefetcher.close();
+			}
+			if(cursor != null){
+				cursor.close();
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		prefetcher = null;
+		cursor = null;
+	}
+
+	/**
+	 * Replays future and option books of the next point in time, followed by the bar close event.
+	 */
+	@Override
+	public boolean next() {
+		if(prefetcher == null && cursor == null) return false;
+		final TrasiBookCursor.Group group;
+		try {
+			group = (prefetcher != null) ? prefetcher.next() : (cursor.next(this.group) ? this.group : null);
+		} catch(Exception e){
+			// database errors are terminal, the replay stops instead of retrying the same failure
+			Execution.Manager.msg().async(Topics.INTERNAL_ERRORS.topic, e);
+			closeCursor();
+			return false;
+		}
+		try {
+			if (group == null) {
+				System.out.println("No more data!!! Give X or XX command to print final status");
+				msg.sync(Topics.STRATEGY_EVENT.topic, Event.Factory.noMoreDataEvent(symbol));
+				return false;
+			}
+			idx.incrementAndGet();
+			final long time = group.time;
+			final TrasiBookSpot fBook = group.future;
+			
+			double fPrice = fBook.avgPrice(); 
+			DTime.Clock.update(time);
+			// if no future price available skip elaboration
+			if(fPrice == 0) return true;
+			
+			/**
+			 * Fire book prices for futures
+			 */
+			Book.Orders fBid = new Book.Orders(fBook.ticker, time, Side.BID, 1, fBook.bid, fBook.bidVolume);
+			msg.async(Topics.BID_ORDERS_BOOK_PREFIX.topic + fBook.ticker, fBid);
+			msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.createOnTickEvent(fBook.ticker, fBid));
+			
+			Book.Orders fAsk = new Book.Orders(fBook.ticker, time, Side.ASK, 1, fBook.ask, fBook.askVolume);
+			msg.async(Topics.ASK_ORDERS_BOOK_PREFIX.topic + fBook.ticker, fAsk);
+			msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.createOnTickEvent(fBook.ticker, fAsk));
+
+			/**
+			 * Fire book prices for options
+			 */
+			for(TrasiBookSpot oBook : group.options) {
+				if(oBook.bid > 0) {
+					Book.Orders oBid = new Book.Orders(oBook.ticker, time, Side.BID, 1, oBook.bid, oBook.bidVolume);
+					msg.async(Topics.BID_ORDERS_BOOK_PREFIX.topic + oBook.ticker, oBid);
+					msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.createOnTickEvent(oBook.ticker, oBid));
+				}
+//								
+				if(oBook.ask > 0) {
+					Book.Orders oAsk = new Book.Orders(oBook.ticker, time, Side.ASK, 1, oBook.ask, oBook.askVolume);
+					msg.async(Topics.ASK_ORDERS_BOOK_PREFIX.topic + oBook.ticker, oAsk);
+					msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.createOnTickEvent(oBook.ticker, oAsk));
+				}
+			}
+			
+			/**
+			 * Fire strategy on bar close events
+			 */
+			final Bar current = new Bar(fBook.ticker, fPrice, fPrice, fPrice, fPrice, 0, time);
+			if (prevTime.get() == 0 || (time / DUtils.DAY_MILLIS) > (prevTime.get() / DUtils.DAY_MILLIS)) {
+				msg.async(Topics.STRATEGY_EVENT.topic, Event.Factory.create(fBook.ticker, DTime.Clock.getTime(),
+						current, Event.Type.OnBarClose, Event.Type.OnDayClose));
+			} else {
+				msg.async(Topics.STRATEGY_EVENT.topic,
+						Event.Factory.create(fBook.ticker, DTime.Clock.getTime(), current, Event.Type.OnBarClose));
+			}
+				
+			prevTime.set(time);
+			return true;
+		} catch(Exception e){
+			Execution.Manager.msg().async(Topics.INTERNAL_ERRORS.topic, e);
+			return true;
+		}
+	}
+
 	@Override
 	public boolean start() {
 		isRunning.set(true);
@@ -249,6 +311,7 @@ public class TrasiTestDataHandler extends Service implements IDataHandler {
 	public boolean dispose() {
 		isStarted.set(false);
 		isRunning.set(false);
+		closeCursor();
 		System.out.println("TrasiTestDataHandler.dispose()");
 		return true;
 	}
@@ -282,6 +345,38 @@ public class TrasiTestDataHandler extends Service implements IDataHandler {
 		this.compressionRate = compressionRate;
 	}
 
+	public Integer getPrefetchDepth() {
+		return prefetchDepth;
+	}
+
+	public void setPrefetchDepth(Integer prefetchDepth) {
+		this.prefetchDepth = prefetchDepth;
+	}
+
+	/**
+	 * @return points in time read ahead and not yet replayed
+	 */
+	public int getPrefetchQueueDepth() {
+		final TrasiBookPrefetcher p = prefetcher;
+		return (p != null) ? p.depth() : 0;
+	}
+
+	/**
+	 * @return number of times the database reader waited for the replay to catch up
+	 */
+	public long getPrefetchReaderStalls() {
+		final TrasiBookPrefetcher p = prefetcher;
+		return (p != null) ? p.readerStalls() : 0;
+	}
+
+	/**
+	 * @return number of times the replay waited for the database reader
+	 */
+	public long getPrefetchEmitterStalls() {
+		final TrasiBookPrefetcher p = prefetcher;
+		return (p != null) ? p.emitterStalls() : 0;
+	}
+
 	public Class<? extends IVolatilityEngine> getVolaEngineClass() {
 		return volaEngineClass;
 	}
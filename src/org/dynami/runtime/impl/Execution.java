@@ -23,9 +23,11 @@ import org.dynami.core.bus.IMsg;
 import org.dynami.core.config.Config;
 import org.dynami.core.utils.StateMachine;
 import org.dynami.core.utils.StateMachine.ChangeStateListener;
+import org.dynami.runtime.IDataHandler;
 import org.dynami.runtime.IExecutionManager;
 import org.dynami.runtime.IServiceBus;
 import org.dynami.runtime.IStrategyExecutor;
+import org.dynami.runtime.Service;
 import org.dynami.runtime.bus.Msg;
 import org.dynami.runtime.config.StrategySettings;
 import org.dynami.runtime.json.JSON;
@@ -39,6 +41,7 @@ public enum Execution implements IExecutionManager {
 	private StrategySettings strategySettings;
 	private String strategyJarPath;
 	private IDynami dynami = (IDynami)engine;
+	private volatile boolean backtest = false;
 
 	private final StateMachine stateMachine = new StateMachine(()->{
 		State.NonActive.addChildren(State.Selected);
@@ -74,10 +77,33 @@ public enum Execution implements IExecutionManager {
 		return true;
 	}
 
+	@Override
+	public boolean setBacktest(boolean backtest) {
+		if(stateMachine.getCurrentState().in(State.NonActive, State.Selected)){
+			this.backtest = backtest;
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean isBacktest() {
+		return backtest;
+	}
+
 	@Override
 	public boolean init(Config config) {
 
 		if(stateMachine.canChangeState(State.Initialized)){
+			// in backtest every message is delivered on the replaying thread, in publishing order;
+			// set on every init so that a live run after a backtest is asynchronous again
+			Msg.Broker.forceSync(backtest);
+			// losing fills or strategy events would silently spoil results, so those topics apply backpressure
+			for(Topics t : Topics.values()){
+				if(!t.topic.endsWith("/")){
+					Msg.Broker.overflowPolicy(t.topic, t.overflowPolicy);
+				}
+			}
 			if(serviceBus.initServices(config)){
 				return stateMachine.changeState(State.Initialized);
 			}
@@ -143,8 +169,8 @@ public enum Execution implements IExecutionManager {
 	@Override
 	public boolean run() {
 		if(stateMachine.canChangeState(State.Running)){
-			if(serviceBus.startServices()){
-				return stateMachine.changeState(State.Running);
+			if(serviceBus.startServices() && stateMachine.changeState(State.Running)){
+				return (backtest)?replay():true;
 			}
 			return false;
 		} else {
@@ -152,6 +178,25 @@ public enum Execution implements IExecutionManager {
 		}
 	}
 
+	/**
+	 * Backtest event loop, it steps the data handler until data are over or execution is no longer running.
+	 */
+	private boolean replay() {
+		final Service handler = serviceBus.getService(IDataHandler.ID);
+		if(!(handler instanceof IDataHandler.Replay)){
+			msg().async(Topics.INTERNAL_ERRORS.topic, new IllegalStateException("Data handler doesn't support backtest mode"));
+			return false;
+		}
+		final IDataHandler.Replay replay = (IDataHandler.Replay)handler;
+		try {
+			while(isRunning() && replay.next());
+			return true;
+		} catch (Exception e) {
+			msg().async(Topics.INTERNAL_ERRORS.topic, e);
+			return false;
+		}
+	}
+
 	@Override
 	public boolean pause() {
 		if(stateMachine.canChangeState(State.Paused)){
@@ -31,6 +31,7 @@ import org.dynami.core.config.Config;
 import org.dynami.core.services.IAssetService;
 import org.dynami.core.utils.DTime;
 import org.dynami.runtime.Service;
+import org.dynami.runtime.bus.Msg;
 import org.dynami.runtime.impl.Execution;
 import org.dynami.runtime.topics.Topics;
 
@@ -87,6 +88,9 @@ public class AssetService extends Service implements IAssetService  {
 				final Asset instr = (Asset)_msg;
 				registry.put(instr.symbol, instr);
 				if(instr instanceof Asset.Tradable){
+					// book consumers only care about the latest quote, slow ones must not accumulate a backlog
+					Msg.Broker.conflate(Topics.ASK_ORDERS_BOOK_PREFIX.topic+instr.symbol, Topics.ASK_ORDERS_BOOK_PREFIX.conflationKey);
+					Msg.Broker.conflate(Topics.BID_ORDERS_BOOK_PREFIX.topic+instr.symbol, Topics.BID_ORDERS_BOOK_PREFIX.conflationKey);
 					msg.subscribe(Topics.ASK_ORDERS_BOOK_PREFIX.topic+instr.symbol, ((Asset.Tradable)instr).book.askBookOrdersHandler);
 					msg.subscribe(Topics.BID_ORDERS_BOOK_PREFIX.topic+instr.symbol, ((Asset.Tradable)instr).book.bidBookOrdersHandler);
 				}
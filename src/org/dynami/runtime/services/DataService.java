@@ -30,6 +30,7 @@ import org.dynami.core.services.IDataService;
 import org.dynami.core.utils.DTime;
 import org.dynami.runtime.Service;
 import org.dynami.runtime.data.BarData;
+import org.dynami.runtime.data.RollingVolatility;
 import org.dynami.runtime.impl.Execution;
 import org.dynami.runtime.topics.Topics;
 
@@ -63,8 +64,7 @@ public class DataService extends Service implements IDataService  {
 			msg.subscribe(Topics.STRATEGY_EVENT.topic, (last, _msg)->{
 				Event e = (Event)_msg;
 				if(e.is(Event.Type.OnBarClose)){
-					data.putIfAbsent(e.bar.symbol, new BarData());
-					data.get(e.bar.symbol).append(e.bar);
+					data.computeIfAbsent(e.bar.symbol, s->new BarData()).append(e.bar);
 				}
 			});
 			initialized = true;
@@ -74,17 +74,38 @@ public class DataService extends Service implements IDataService  {
 	}
 	
 	public double histVola(String symbol, int units){
-		Market market = Execution.Manager.dynami().assets().getMarketBySymbol(symbol);
-		return data.get(symbol).getVolatility(engine, units)
-				*engine.annualizationFactor(data.get(symbol).getCompression(), units, market);
+		return histVola(engine, symbol, units);
 	}
 	
+	/**
+	 * Computed by the engine once per bar, next calls on the same bar are served from {@link BarData#cachedVolatility(IVolatilityEngine, int)}
+	 */
 	public double histVola(IVolatilityEngine engine, String symbol, int units){
-		Market market = Execution.Manager.dynami().assets().getMarketBySymbol(symbol);
-		return data.get(symbol).getVolatility(engine, units)
-				*engine.annualizationFactor(data.get(symbol).getCompression(), units, market);
+		final Market market = Execution.Manager.dynami().assets().getMarketBySymbol(symbol);
+		final BarData bars = data.get(symbol);
+		return bars.cachedVolatility(engine, units)
+				*engine.annualizationFactor(bars.getCompression(), units, market);
 	}
-
+	
+	/**
+	 * Registers a volatility updated on every bar close of the symbol, not annualized.
+	 * It must be released with {@link #removeRollingVolatility(String, RollingVolatility)} when no longer needed.
+	 * @param symbol
+	 * @param estimator
+	 * @param window number of bars
+	 */
+	public RollingVolatility rollingVolatility(String symbol, RollingVolatility.Estimator estimator, int window){
+		return data.computeIfAbsent(symbol, s->new BarData()).rollingVolatility(estimator, window);
+	}
+	
+	/**
+	 * Stops updating a volatility registered with {@link #rollingVolatility(String, RollingVolatility.Estimator, int)}
+	 */
+	public void removeRollingVolatility(String symbol, RollingVolatility volatility){
+		final BarData bars = data.get(symbol);
+		if(bars != null) bars.removeRollingVolatility(volatility);
+	}
+	
 	@Override
 	public IData history(String symbol) {
 		IData tmp = data.get(symbol);
@@ -92,11 +113,14 @@ public class DataService extends Service implements IDataService  {
 		return tmp;
 	}
 
+	/**
+	 * The time frame is registered on first request, then updated on every bar close without resampling the history
+	 */
 	@Override
 	public IData history(String symbol, long timeFrame, int units) {
-		IData tmp = history(symbol);
+		BarData tmp = data.get(symbol);
 		assert tmp != null : "No, historical data for symbol "+symbol;
-		return tmp.changeCompression(timeFrame*units);
+		return tmp.timeFrame(timeFrame*units);
 	}
 
 	@Override
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.services;
+
+/**
+ * Describes how simulated orders are executed against the replayed books.
+ * Default methods reproduce an immediate, full and frictionless execution.
+ * @author Atria
+ * @see SimulatedFillModel
+ */
+public interface FillModel {
+	public static final FillModel IMMEDIATE = new FillModel() {};
+
+	/**
+	 * @return milliseconds on DTime.Clock between order submission and its arrival on the market
+	 */
+	public default long submissionLatency(){
+		return 0;
+	}
+
+	/**
+	 * @return milliseconds on DTime.Clock between an execution and its report to the strategy
+	 */
+	public default long reportLatency(){
+		return 0;
+	}
+
+	/**
+	 * @return true to execute no more than the quantity quoted on the book, the rest stays pending
+	 */
+	public default boolean partialFills(){
+		return false;
+	}
+
+	/**
+	 * @return true to let the quantity resting ahead of an order at its price be executed first
+	 */
+	public default boolean queuePosition(){
+		return false;
+	}
+
+	/**
+	 * @param price quoted price
+	 * @param quantity executed quantity, always positive
+	 * @param displayed quantity quoted on the book
+	 * @return price worsening applied to the execution, zero or positive
+	 */
+	public default double slippage(double price, long quantity, long displayed){
+		return 0;
+	}
+}
@@ -0,0 +1,487 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.services;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.dynami.core.assets.Asset;
+import org.dynami.core.assets.Book;
+import org.dynami.core.orders.OrderRequest;
+import org.dynami.core.portfolio.ExecutedOrder;
+import org.dynami.core.utils.DTime;
+import org.dynami.runtime.impl.Execution;
+
+/**
+ * Executes orders against the replayed books according to a {@link FillModel}.
+ * Latencies are measured on DTime.Clock and honoured at the first quote following their expiry,
+ * so the simulation runs on the replay thread and stays deterministic.
+ * Stop triggers, one-cancels-other groups and bracket legs are handled while matching a quote.
+ * Executions, cancellations, released bracket legs and triggered stops are reported to the listener outside of any lock,
+ * in the order they took place.
+ * @author Atria
+ */
+class FillSimulator {
+	private final OrderBook book = new OrderBook();
+	private final OrderStore.LongMap<Working> working = new OrderStore.LongMap<>();
+	private final Map<String, List<Working>> stops = new HashMap<>();
+	private final Deque<Working> staged = new ArrayDeque<>();
+	private final Deque<Report> reports = new ArrayDeque<>();
+	/**
+	 * orders withdrawn while the book is being matched, removed from it afterwards
+	 */
+	private final List<Working> removals = new ArrayList<>();
+	private final Listener listener;
+	private final Quotes quotes;
+	private volatile FillModel model = FillModel.IMMEDIATE;
+	private boolean matching = false;
+
+	static enum Type {Limit, Market, Stop}
+
+	static interface Listener {
+		/**
+		 * @param order
+		 * @param fill executed quantity and price
+		 * @param last true when the order has been completely filled
+		 */
+		void onFill(OrderRequest order, ExecutedOrder fill, boolean last);
+
+		/**
+		 * @param order withdrawn by the simulator because of a one-cancels-other group
+		 */
+		void onCancel(OrderRequest order);
+
+		/**
+		 * @param order bracket leg sent to the market once its entry has been completely filled
+		 * @param type
+		 */
+		void onRelease(OrderRequest order, Type type);
+
+		/**
+		 * @param order stop touched by the price and sent to the market as a market order
+		 */
+		void onTrigger(OrderRequest order);
+	}
+
+	/**
+	 * Current top of the book of an instrument
+	 */
+	static interface Quotes {
+		/**
+		 * @return best ask or bid, null if none
+		 */
+		Book.Orders best(String symbol, boolean ask);
+	}
+
+	FillSimulator(Listener listener) {
+		this(listener, (symbol, ask)->{
+			final Asset.Tradable trad = Execution.Manager.dynami().assets().getBySymbol(symbol).asTradable();
+			return ask ? trad.book.ask() : trad.book.bid();
+		});
+	}
+
+	FillSimulator(Listener listener, Quotes quotes) {
+		this.listener = listener;
+		this.quotes = quotes;
+	}
+
+	void model(FillModel model){
+		this.model = model;
+	}
+
+	FillModel model(){
+		return model;
+	}
+
+	/**
+	 * Sends an order to the simulated market. Market orders with no submission latency are filled against the current book,
+	 * other orders wait for the next quote.
+	 * @param order
+	 * @param type
+	 */
+	void submit(OrderRequest order, Type type){
+		submit(Collections.singletonList(order), Collections.singletonList(type), false);
+	}
+
+	/**
+	 * @param orders
+	 * @param types type of each order
+	 * @param oco true if the first execution of any order cancels the others
+	 */
+	void submit(List<OrderRequest> orders, List<Type> types, boolean oco){
+		final long now = DTime.Clock.getTime();
+		final List<Report> due;
+		synchronized (this) {
+			final List<Working> placed = new ArrayList<>(orders.size());
+			for(int i = 0; i < orders.size(); i++){
+				final Working w = place(orders.get(i), types.get(i), now);
+				if(w != null) placed.add(w);
+			}
+			if(oco && placed.size() > 1){
+				for(Working w : placed) w.oco = placed;
+			}
+			for(Working w : placed){
+				if(working.get(w.order.id) == w) release(w, now, true);
+			}
+			due = due(now);
+		}
+		deliver(due);
+	}
+
+	/**
+	 * Sends an entry order whose target and stop legs, one cancelling the other, are released once it's completely filled.
+	 * Legs are unknown to the listener until their release is reported.
+	 * @param entry
+	 * @param type entry order type
+	 * @param target limit order closing the position
+	 * @param stop stop order closing the position
+	 */
+	void bracket(OrderRequest entry, Type type, OrderRequest target, OrderRequest stop){
+		final long now = DTime.Clock.getTime();
+		final List<Report> due;
+		synchronized (this) {
+			final Working w = place(entry, type, now);
+			if(w == null) return;
+			final List<Working> legs = new ArrayList<>(2);
+			final Working t = place(target, Type.Limit, now), s = place(stop, Type.Stop, now);
+			if(t != null) legs.add(t);
+			if(s != null) legs.add(s);
+			for(Working l : legs){
+				l.oco = legs;
+			}
+			w.children = legs;
+			release(w, now, true);
+			due = due(now);
+		}
+		deliver(due);
+	}
+
+	/**
+	 * Withdraws an order from the simulated market, executions already matched are still reported.
+	 * Legs of a bracket whose entry is cancelled are dropped, they were never released.
+	 * @param order
+	 * @return true if the order was still working
+	 */
+	boolean cancel(OrderRequest order){
+		final List<Report> due;
+		synchronized (this) {
+			final Working w = working.remove(order.id);
+			if(w == null) return false;
+			final long now = DTime.Clock.getTime();
+			withdraw(w, now);
+			due = due(now);
+		}
+		deliver(due);
+		return true;
+	}
+
+	/**
+	 * Activates the orders whose submission latency has elapsed, triggers stops, matches the quote against the working orders
+	 * and reports the executions due
+	 * @param quote
+	 * @param ask true if the quote is on the ask side
+	 */
+	void onQuote(Book.Orders quote, boolean ask){
+		if(quote == null || Double.isNaN(quote.price)) return;
+		final long now = DTime.Clock.getTime();
+		final List<Report> due;
+		synchronized (this) {
+			if(working.size() == 0 && reports.isEmpty()) return;
+			while(!staged.isEmpty() && staged.peek().due <= now){
+				arrive(staged.poll(), now, false);
+			}
+			trigger(quote, ask, now);
+			final FillModel model = this.model;
+			if(model.queuePosition()){
+				// quantity quoted at the price of resting orders bounds the quantity ahead of them
+				book.forEachAt(quote.symbol, ask ? -1 : 1, quote.price, o->{
+					final Working w = working.get(o.id);
+					if(w != null) w.queueAhead = w.queueAhead < 0 ? quote.quantity : Math.min(w.queueAhead, quote.quantity);
+				});
+			}
+			final long[] available = {model.partialFills() ? quote.quantity : Long.MAX_VALUE};
+			final OrderBook.Matcher matcher = o->{
+				final Working w = working.get(o.id);
+				if(w == null) return true;
+				fill(w, quote, available, now);
+				return w.remaining == 0;
+			};
+			matching = true;
+			try {
+				if(ask){
+					book.crossAsk(quote.symbol, quote.price, matcher);
+				} else {
+					book.crossBid(quote.symbol, quote.price, matcher);
+				}
+			} finally {
+				matching = false;
+			}
+			for(Working w : removals){
+				book.remove(w.order, w.price);
+			}
+			removals.clear();
+			due = due(now);
+		}
+		deliver(due);
+	}
+
+	synchronized void clear(){
+		book.clear();
+		working.clear();
+		stops.clear();
+		staged.clear();
+		reports.clear();
+		removals.clear();
+	}
+
+	private Working place(OrderRequest order, Type type, long now){
+		if(order.quantity == 0) return null;
+		final double price = Type.Market.equals(type) ? (order.quantity > 0 ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY) : order.price;
+		final Working w = new Working(order, type, price);
+		working.put(order.id, w);
+		return w;
+	}
+
+	/**
+	 * Sends an order to the market, after the submission latency if any
+	 * @param fillNow true to fill a market order against the current book
+	 */
+	private void release(Working w, long now, boolean fillNow){
+		final long latency = model.submissionLatency();
+		if(latency > 0){
+			w.due = now + latency;
+			staged.add(w);
+		} else {
+			arrive(w, now, fillNow);
+		}
+	}
+
+	private void arrive(Working w, long now, boolean fillNow){
+		if(w.stop){
+			stops.computeIfAbsent(w.order.symbol, s->new ArrayList<>()).add(w);
+			return;
+		}
+		if(fillNow && Double.isInfinite(w.price)){
+			final Book.Orders quote = quotes.best(w.order.symbol, w.order.quantity > 0);
+			if(quote != null && !Double.isNaN(quote.price)){
+				fill(w, quote, new long[]{model.partialFills() ? quote.quantity : Long.MAX_VALUE}, now);
+			}
+			if(w.remaining == 0) return;
+		}
+		activate(w);
+	}
+
+	/**
+	 * Turns into market orders the stops touched by the quote, buy stops by the ask and sell stops by the bid
+	 */
+	private void trigger(Book.Orders quote, boolean ask, long now){
+		final List<Working> list = stops.get(quote.symbol);
+		if(list == null) return;
+		for(Iterator<Working> it = list.iterator(); it.hasNext(); ){
+			final Working w = it.next();
+			final boolean buy = w.order.quantity > 0;
+			if(buy != ask) continue;
+			if(buy ? quote.price >= w.price : quote.price <= w.price){
+				it.remove();
+				w.stop = false;
+				w.price = buy ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+				activate(w);
+				reports.add(new Report(Report.Kind.Trigger, w.order, w.type, null, false, now + model.reportLatency()));
+			}
+		}
+		if(list.isEmpty()) stops.remove(quote.symbol);
+	}
+
+	private void activate(Working w){
+		w.active = true;
+		if(model.queuePosition() && !Double.isInfinite(w.price)){
+			final Book.Orders best = quotes.best(w.order.symbol, w.order.quantity < 0);
+			if(best == null || Double.isNaN(best.price)){
+				w.queueAhead = -1;
+			} else if(best.price == w.price){
+				w.queueAhead = best.quantity;
+			} else if(w.order.quantity > 0 ? w.price > best.price : w.price < best.price){
+				// the order improves the best price, nobody is ahead
+				w.queueAhead = 0;
+			}
+		} else {
+			w.queueAhead = 0;
+		}
+		book.add(w.order, w.price);
+	}
+
+	/**
+	 * Removes an order, already out of the working set, from wherever it waits, dropping its unreleased bracket legs
+	 */
+	private void withdraw(Working w, long now){
+		if(w.active){
+			if(matching){
+				removals.add(w);
+			} else {
+				book.remove(w.order, w.price);
+			}
+		} else if(w.stop){
+			final List<Working> list = stops.get(w.order.symbol);
+			if(list != null) list.remove(w);
+		} else {
+			staged.remove(w);
+		}
+		if(w.children != null){
+			for(Working c : w.children){
+				if(working.remove(c.order.id) == c) withdraw(c, now);
+			}
+		}
+	}
+
+	private void fill(Working w, Book.Orders quote, long[] available, long now){
+		final FillModel model = this.model;
+		if(model.queuePosition() && w.price == quote.price){
+			// quantity ahead at the same price is executed first, using up the liquidity of the quote
+			final long ahead = Math.max(w.queueAhead, 0);
+			final long consumed = Math.min(ahead, model.partialFills() ? available[0] : quote.quantity);
+			w.queueAhead = ahead - consumed;
+			available[0] -= consumed;
+			if(w.queueAhead > 0) return;
+		}
+		final long quantity = Math.min(w.remaining, available[0]);
+		if(quantity <= 0) return;
+		available[0] -= quantity;
+		w.remaining -= quantity;
+		final double slippage = model.slippage(quote.price, quantity, quote.quantity);
+		final boolean buy = w.order.quantity > 0;
+		final ExecutedOrder fill = new ExecutedOrder(w.order.id, w.order.symbol, buy ? quote.price + slippage : quote.price - slippage, buy ? quantity : -quantity, now);
+		if(w.remaining == 0) working.remove(w.order.id);
+		reports.add(new Report(Report.Kind.Fill, w.order, w.type, fill, w.remaining == 0, now + model.reportLatency()));
+		if(w.oco != null){
+			// the first execution cancels the rest of the group, before any other order is matched
+			for(Working o : w.oco){
+				if(o != w && working.remove(o.order.id) == o){
+					withdraw(o, now);
+					reports.add(new Report(Report.Kind.Cancel, o.order, o.type, null, true, now + model.reportLatency()));
+				}
+			}
+			w.oco = null;
+		}
+		if(w.remaining == 0 && w.children != null){
+			for(Working c : w.children){
+				if(working.get(c.order.id) == c){
+					release(c, now, false);
+					// queued before any report of the leg itself
+					reports.add(new Report(Report.Kind.Release, c.order, c.type, null, false, now + model.reportLatency()));
+				}
+			}
+			w.children = null;
+		}
+	}
+
+	private List<Report> due(long now){
+		if(reports.isEmpty() || reports.peek().due > now) return Collections.emptyList();
+		final List<Report> due = new ArrayList<>();
+		while(!reports.isEmpty() && reports.peek().due <= now){
+			due.add(reports.poll());
+		}
+		return due;
+	}
+
+	private void deliver(List<Report> due){
+		for(Report r : due){
+			switch (r.kind) {
+			case Fill:
+				listener.onFill(r.order, r.fill, r.last);
+				break;
+			case Cancel:
+				listener.onCancel(r.order);
+				break;
+			case Release:
+				listener.onRelease(r.order, r.type);
+				break;
+			default:
+				listener.onTrigger(r.order);
+				break;
+			}
+		}
+	}
+
+	private static class Working {
+		private final OrderRequest order;
+		private final Type type;
+		/**
+		 * working price, infinite for market orders, trigger price for stops
+		 */
+		private double price;
+		/**
+		 * time the order reaches the market
+		 */
+		private long due;
+		private long remaining;
+		/**
+		 * quantity to be executed before the order at its price, negative when unknown
+		 */
+		private long queueAhead = -1;
+		private boolean active = false;
+		/**
+		 * true while waiting for the trigger price
+		 */
+		private boolean stop;
+		/**
+		 * one-cancels-other group, including this order
+		 */
+		private List<Working> oco;
+		/**
+		 * bracket legs released when this order is completely filled
+		 */
+		private List<Working> children;
+
+		private Working(OrderRequest order, Type type, double price) {
+			this.order = order;
+			this.type = type;
+			this.price = price;
+			this.stop = Type.Stop.equals(type);
+			this.remaining = Math.abs(order.quantity);
+		}
+	}
+
+	/**
+	 * Event to be reported to the listener
+	 */
+	private static class Report {
+		private static enum Kind {Fill, Cancel, Release, Trigger}
+		private final Kind kind;
+		private final OrderRequest order;
+		private final Type type;
+		/**
+		 * execution, null unless kind is Fill
+		 */
+		private final ExecutedOrder fill;
+		private final boolean last;
+		private final long due;
+
+		private Report(Kind kind, OrderRequest order, Type type, ExecutedOrder fill, boolean last, long due) {
+			this.kind = kind;
+			this.order = order;
+			this.type = type;
+			this.fill = fill;
+			this.last = last;
+			this.due = due;
+		}
+	}
+}
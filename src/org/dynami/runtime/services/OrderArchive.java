@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.dynami.core.orders.OrderRequest;
+import org.dynami.core.services.IOrderService;
+import org.dynami.core.services.IOrderService.Status;
+
+/**
+ * Append-only columnar journal of orders that reached a final status.
+ * Columns are split in fixed size chunks, so appending never copies previous rows.
+ * Archived orders are returned as new {@link OrderRequest} instances, without their original handler.
+ * Not thread safe, guarded by {@link OrderStore}.
+ * @author Atria
+ */
+class OrderArchive {
+	private static final int CHUNK_BITS = 12;
+	private static final int CHUNK = 1 << CHUNK_BITS;
+	private static final int MASK = CHUNK-1;
+	private static final IOrderService.IOrderHandler NO_HANDLER = new IOrderService.IOrderHandler() {};
+	private static final Status[] STATUSES = Status.values();
+
+	private final List<Chunk> chunks = new ArrayList<>();
+	/**
+	 * row+1 by order id, chunked as well; ids are dense as they come from a counter
+	 */
+	private int[][] rowsById = new int[16][];
+	private int size = 0;
+
+	void append(OrderRequest order){
+		if((size & MASK) == 0) chunks.add(new Chunk());
+		final Chunk c = chunks.get(size >>> CHUNK_BITS);
+		final int i = size & MASK;
+		c.id[i] = order.id;
+		c.requestTime[i] = order.requestTime;
+		c.executionTime[i] = order.getExecutionTime();
+		c.quantity[i] = order.quantity;
+		c.price[i] = order.price;
+		c.status[i] = (byte)order.getStatus().ordinal();
+		c.symbol[i] = order.symbol.intern();
+		c.note[i] = order.note;
+		size++;
+		if(order.id >= 0 && order.id < Integer.MAX_VALUE){
+			final int id = (int)order.id;
+			final int chunk = id >>> CHUNK_BITS;
+			if(chunk >= rowsById.length) rowsById = Arrays.copyOf(rowsById, Math.max(rowsById.length*2, chunk+1));
+			if(rowsById[chunk] == null) rowsById[chunk] = new int[CHUNK];
+			rowsById[chunk][id & MASK] = size;
+		}
+	}
+
+	/**
+	 * @param id
+	 * @return the archived order, null if not archived
+	 */
+	OrderRequest get(long id){
+		if(id < 0 || id >= Integer.MAX_VALUE) return null;
+		final int chunk = (int)id >>> CHUNK_BITS;
+		if(chunk >= rowsById.length || rowsById[chunk] == null) return null;
+		final int row = rowsById[chunk][(int)id & MASK];
+		return row == 0 ? null : order(row-1);
+	}
+
+	/**
+	 * @return archived orders with the given status, in archival order
+	 */
+	List<OrderRequest> get(Status status){
+		final List<OrderRequest> orders = new ArrayList<>();
+		final byte s = (byte)status.ordinal();
+		for(int row = 0; row < size; row++){
+			if(chunks.get(row >>> CHUNK_BITS).status[row & MASK] == s){
+				orders.add(order(row));
+			}
+		}
+		return orders;
+	}
+
+	int size(){
+		return size;
+	}
+
+	void clear(){
+		chunks.clear();
+		rowsById = new int[16][];
+		size = 0;
+	}
+
+	private OrderRequest order(int row){
+		final Chunk c = chunks.get(row >>> CHUNK_BITS);
+		final int i = row & MASK;
+		final OrderRequest order = new OrderRequest(c.id[i], c.requestTime[i], c.symbol[i], c.quantity[i], c.price[i], c.note[i], NO_HANDLER);
+		order.updateStatus(STATUSES[c.status[i]]);
+		order.setExecutionTime(c.executionTime[i]);
+		return order;
+	}
+
+	private static class Chunk {
+		private final long[] id = new long[CHUNK];
+		private final long[] requestTime = new long[CHUNK];
+		private final long[] executionTime = new long[CHUNK];
+		private final long[] quantity = new long[CHUNK];
+		private final double[] price = new double[CHUNK];
+		private final byte[] status = new byte[CHUNK];
+		private final String[] symbol = new String[CHUNK];
+		private final String[] note = new String[CHUNK];
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.services;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.dynami.core.orders.OrderRequest;
+
+/**
+ * Pending limit orders indexed per symbol, buys by descending and sells by ascending price, FIFO within a price level.
+ * A quote only visits the levels it crosses, matched and removed orders leave the index.
+ * @author Atria
+ */
+class OrderBook {
+	private final Map<String, Orders> books = new ConcurrentHashMap<>();
+
+	/**
+	 * Decides what happens to an order crossed by a quote
+	 */
+	static interface Matcher {
+		/**
+		 * @param order
+		 * @return true if the order leaves the book
+		 */
+		boolean match(OrderRequest order);
+	}
+
+	/**
+	 * Orders with zero quantity can't be matched and are not indexed
+	 * @param order
+	 * @param price working price, infinite for market orders
+	 */
+	void add(OrderRequest order, double price){
+		if(order.quantity == 0) return;
+		final Orders orders = books.computeIfAbsent(order.symbol, s->new Orders());
+		synchronized (orders) {
+			orders.side(order.quantity).computeIfAbsent(price, p->new ArrayDeque<>()).add(order);
+		}
+	}
+
+	/**
+	 * @param order
+	 * @param price working price the order was added with
+	 * @return true if the order was in the book
+	 */
+	boolean remove(OrderRequest order, double price){
+		final Orders orders = books.get(order.symbol);
+		if(orders == null || order.quantity == 0) return false;
+		synchronized (orders) {
+			final NavigableMap<Double, Deque<OrderRequest>> side = orders.side(order.quantity);
+			final Deque<OrderRequest> level = side.get(price);
+			if(level == null || !level.remove(order)) return false;
+			if(level.isEmpty()) side.remove(price);
+			return true;
+		}
+	}
+
+	/**
+	 * Offers to the matcher the buy orders with a price not lower than the ask, best price first
+	 */
+	void crossAsk(String symbol, double ask, Matcher matcher){
+		final Orders orders = books.get(symbol);
+		if(orders == null) return;
+		synchronized (orders) {
+			cross(orders.buys, ask, matcher);
+		}
+	}
+
+	/**
+	 * Offers to the matcher the sell orders with a price not greater than the bid, best price first
+	 */
+	void crossBid(String symbol, double bid, Matcher matcher){
+		final Orders orders = books.get(symbol);
+		if(orders == null) return;
+		synchronized (orders) {
+			cross(orders.sells, bid, matcher);
+		}
+	}
+
+	/**
+	 * Visits the orders resting at a price level, in time priority
+	 * @param symbol
+	 * @param side positive for buy orders, negative for sell orders
+	 * @param price
+	 * @param consumer
+	 */
+	void forEachAt(String symbol, long side, double price, Consumer<OrderRequest> consumer){
+		final Orders orders = books.get(symbol);
+		if(orders == null) return;
+		synchronized (orders) {
+			final Deque<OrderRequest> level = orders.side(side).get(price);
+			if(level != null) level.forEach(consumer);
+		}
+	}
+
+	void clear(){
+		books.clear();
+	}
+
+	private static void cross(NavigableMap<Double, Deque<OrderRequest>> side, double price, Matcher matcher){
+		if(Double.isNaN(price) || side.isEmpty()) return;
+		// head of the side up to the quote, whatever the side ordering
+		final Iterator<Deque<OrderRequest>> levels = side.headMap(price, true).values().iterator();
+		while(levels.hasNext()){
+			final Deque<OrderRequest> level = levels.next();
+			for(Iterator<OrderRequest> it = level.iterator(); it.hasNext(); ){
+				if(matcher.match(it.next())) it.remove();
+			}
+			if(level.isEmpty()) levels.remove();
+		}
+	}
+
+	private static class Orders {
+		private final NavigableMap<Double, Deque<OrderRequest>> buys = new TreeMap<>(Comparator.reverseOrder());
+		private final NavigableMap<Double, Deque<OrderRequest>> sells = new TreeMap<>();
+
+		private NavigableMap<Double, Deque<OrderRequest>> side(long quantity){
+			return quantity > 0 ? buys : sells;
+		}
+	}
+}
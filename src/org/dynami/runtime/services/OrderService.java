@@ -15,26 +15,52 @@
  */
 package org.dynami.runtime.services;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
 
-import org.dynami.core.assets.Asset;
 import org.dynami.core.assets.Asset.Tradable;
 import org.dynami.core.assets.Book;
 import org.dynami.core.config.Config;
 import org.dynami.core.orders.OrderRequest;
 import org.dynami.core.portfolio.ExecutedOrder;
 import org.dynami.core.services.IOrderService;
+import org.dynami.core.services.ITraceService;
+import org.dynami.core.services.ITraceService.Trace.Type;
 import org.dynami.core.utils.DTime;
+import org.dynami.runtime.IDataHandler;
 import org.dynami.runtime.Service;
 import org.dynami.runtime.impl.Execution;
 import org.dynami.runtime.topics.Topics;
 
 public class OrderService extends Service implements IOrderService {
 	private final AtomicLong ids = new AtomicLong(0);
-	private final List<OrderRequest> requests = new CopyOnWriteArrayList<OrderRequest>();
+	private final OrderStore requests = new OrderStore();
+	private final FillSimulator simulator = new FillSimulator(new FillSimulator.Listener() {
+		@Override
+		public void onFill(OrderRequest order, ExecutedOrder fill, boolean last) {
+			OrderService.this.onFill(order, fill, last);
+		}
+
+		@Override
+		public void onCancel(OrderRequest order) {
+			trace("cancelled "+order.id);
+			requests.update(order, Status.Cancelled);
+		}
+
+		@Override
+		public void onRelease(OrderRequest order, FillSimulator.Type type) {
+			trace("released "+order.id);
+			register(order, type);
+		}
+
+		@Override
+		public void onTrigger(OrderRequest order) {
+			trace("triggered "+order.id);
+			Execution.Manager.msg().async(Topics.ORDER_REQUESTS.topic, order);
+		}
+	});
 	private boolean initialized = false;
 //	private final List<OrderRequest> executed = new CopyOnWriteArrayList<OrderRequest>();
 
@@ -46,6 +72,7 @@ public class OrderService extends Service implements IOrderService {
 	@Override
 	public boolean dispose() {
 		requests.clear();
+		simulator.clear();
 //		executed.clear();
 		ids.set(0);
 		return true;
@@ -53,51 +80,34 @@ public class OrderService extends Service implements IOrderService {
 
 	@Override
 	public <T extends Config> boolean init(T config) throws Exception {
+		final Service handler = Execution.Manager.getServiceBus().getService(IDataHandler.ID);
+		simulator.model(handler instanceof IDataHandler.Replay ? ((IDataHandler.Replay)handler).fillModel() : FillModel.IMMEDIATE);
 		if(initialized) return true;
 		initialized = true;
-		Execution.Manager.msg().subscribe(Topics.INSTRUMENT.topic, (_last, _msg)->{
-			final Asset asset = (Asset)_msg;
-
-			Execution.Manager.msg().subscribe(Topics.ASK_ORDERS_BOOK_PREFIX.topic+asset.symbol, (last, msg)->{
-				final Book.Orders book = (Book.Orders)msg;
-				requests.stream()
-					.filter(o->o.getStatus().equals(IOrderService.Status.Pending))
-					.filter(o->o.symbol.equals(book.symbol))
-					.filter(o->o.quantity>0)
-					.filter(o->o.price >= book.price)
-					.peek((o)->{
-						System.out.println("OrderService-> executed "+o.id);
-						o.updateStatus(IOrderService.Status.Executed);
-						o.setExecutionTime(DTime.Clock.getTime());
-						Execution.Manager.msg().async(Topics.EXECUTED_ORDER.topic, new ExecutedOrder(o.id, o.symbol, book.price, o.quantity, DTime.Clock.getTime()));
-						o.handler.onOrderExecuted(Execution.Manager.dynami(), o);
-					})
-					.count();
-			});
-			Execution.Manager.msg().subscribe(Topics.BID_ORDERS_BOOK_PREFIX.topic+asset.symbol, (last, msg)->{
-				final Book.Orders book = (Book.Orders)msg;
-				requests.stream()
-					.filter(o->o.getStatus().equals(IOrderService.Status.Pending))
-					.filter(o->o.symbol.equals(book.symbol))
-					.filter(o->o.quantity<0)
-					.filter(o->o.price <= book.price)
-					.peek((o)->{
-						System.out.println("OrderService-> executed "+o.id);
-						o.updateStatus(IOrderService.Status.Executed);
-						o.setExecutionTime(DTime.Clock.getTime());
-						Execution.Manager.msg().async(Topics.EXECUTED_ORDER.topic, new ExecutedOrder(o.id, o.symbol, book.price, o.quantity, DTime.Clock.getTime()));
-						o.handler.onOrderExecuted(Execution.Manager.dynami(), o);
-					})
-					.count();
-			});
+		// a single subscription covers the books of every instrument
+		Execution.Manager.msg().subscribe(Topics.ASK_ORDERS_BOOK_PREFIX.topic+"*", (last, msg)->{
+			final Book.Orders book = (Book.Orders)msg;
+			simulator.onQuote(book, true);
+		});
+		Execution.Manager.msg().subscribe(Topics.BID_ORDERS_BOOK_PREFIX.topic+"*", (last, msg)->{
+			final Book.Orders book = (Book.Orders)msg;
+			simulator.onQuote(book, false);
 		});
 		return super.init(config);
 	}
 
+	private void onFill(OrderRequest o, ExecutedOrder fill, boolean last){
+		// cancels are accepted only for orders still working, a completed order fails here only if removed meanwhile
+		final boolean executed = last && requests.execute(o, fill.time);
+		if(executed) trace("executed "+o.id);
+		Execution.Manager.msg().async(Topics.EXECUTED_ORDER.topic, fill);
+		if(executed) o.handler.onOrderExecuted(Execution.Manager.dynami(), o);
+	}
+
 	@Override
 	public long limitOrder(String symbol, double price, long quantity, String note, IOrderHandler handler) {
 		final long id = ids.getAndIncrement();
-		System.out.println("OrderService.limitOrder() "+id+" "+symbol+" "+quantity+" at "+price);
+		trace("limitOrder "+id+" "+symbol+" "+quantity+" at "+price);
 		final OrderRequest request = new OrderRequest(
 				id,
 				DTime.Clock.getTime(),
@@ -108,6 +118,7 @@ public class OrderService extends Service implements IOrderService {
 				handler);
 		requests.add(request);
 		Execution.Manager.msg().async(Topics.ORDER_REQUESTS.topic, request);
+		simulator.submit(request, FillSimulator.Type.Limit);
 		return id;
 	}
 
@@ -137,7 +148,7 @@ public class OrderService extends Service implements IOrderService {
 		double price = (quantity>0)?trad.book.ask().price:trad.book.bid().price;
 		
 		final long id = ids.getAndIncrement();
-		System.out.println("OrderService.marketOrder() "+id+" "+symbol+" "+quantity+" at "+price);
+		trace("marketOrder "+id+" "+symbol+" "+quantity+" at "+price);
 		final OrderRequest request = new OrderRequest(
 				id,
 				DTime.Clock.getTime(),
@@ -146,29 +157,130 @@ public class OrderService extends Service implements IOrderService {
 				price,
 				note,
 				handler);
-		System.out.println("OrderService-> executed "+id);
-		request.updateStatus(Status.Executed);
-		request.updateStatus(IOrderService.Status.Executed);
-		request.setExecutionTime(DTime.Clock.getTime());
-		Execution.Manager.msg().async(Topics.ORDER_REQUESTS.topic, request);
-		Execution.Manager.msg().async(Topics.EXECUTED_ORDER.topic, new ExecutedOrder(request.id, request.symbol, price, request.quantity, request.getExecutionTime()));
-		request.handler.onOrderExecuted(Execution.Manager.dynami(), request);
 		requests.add(request);
+		Execution.Manager.msg().async(Topics.ORDER_REQUESTS.topic, request);
+		simulator.submit(request, FillSimulator.Type.Market);
 		return id;
 		//return limitOrder(symbol, price, quantity, note, handler);
 	}
 
+	/**
+	 * Sends a market order when the price touches the stop: buy stops are triggered by the ask, sell stops by the bid.
+	 * The order is pending from submission and published on {@link Topics#ORDER_REQUESTS} once triggered.
+	 * @return order id
+	 */
+	public long stopOrder(String symbol, double stop, long quantity, String note, IOrderHandler handler) {
+		return submit(new Batch().stop(symbol, stop, quantity, note, handler))[0];
+	}
+
+	public long stopOrder(String symbol, double stop, long quantity) {
+		return stopOrder(symbol, stop, quantity, "", new IOrderService.IOrderHandler() {});
+	}
+
+	/**
+	 * Submits every order of the batch, each published on {@link Topics#ORDER_REQUESTS} as a single order is
+	 * @param batch
+	 * @return ids of the orders, in batch order
+	 */
+	public long[] submit(Batch batch) {
+		return submit(batch, false);
+	}
+
+	/**
+	 * Submits the orders of the batch as a one-cancels-other group: the first execution of any of them
+	 * cancels the others while matching the same quote
+	 * @param batch
+	 * @return ids of the orders, in batch order
+	 */
+	public long[] submitOco(Batch batch) {
+		return submit(batch, true);
+	}
+
+	/**
+	 * Submits an entry order with a target and a stop leg closing the position. The legs are sent as soon as the entry
+	 * is completely filled and the first execution of either cancels the other. Cancelling the entry drops the legs.
+	 * Legs are pending and published, the stop once triggered, only from their release: until then their ids are unknown
+	 * to {@link #getOrderById(long)}.
+	 * @param symbol
+	 * @param price entry limit price, NaN for a market entry
+	 * @param quantity
+	 * @param target limit price of the closing leg
+	 * @param stop stop price of the closing leg
+	 * @param note
+	 * @param handler
+	 * @return ids of entry, target and stop orders
+	 */
+	public long[] bracketOrder(String symbol, double price, long quantity, double target, double stop, String note, IOrderHandler handler) {
+		final Batch batch = Double.isNaN(price) ? new Batch().market(symbol, quantity, note, handler) : new Batch().limit(symbol, price, quantity, note, handler);
+		batch.limit(symbol, target, -quantity, note, handler).stop(symbol, stop, -quantity, note, handler);
+		final OrderRequest[] orders = orders(batch);
+		register(orders[0], batch.legs.get(0).type);
+		simulator.bracket(orders[0], batch.legs.get(0).type, orders[1], orders[2]);
+		return ids(orders);
+	}
+
+	private long[] submit(Batch batch, boolean oco) {
+		final OrderRequest[] orders = orders(batch);
+		final List<FillSimulator.Type> types = new ArrayList<>(orders.length);
+		for(int i = 0; i < orders.length; i++){
+			types.add(batch.legs.get(i).type);
+			register(orders[i], types.get(i));
+		}
+		trace("submit "+orders.length+" orders from "+(orders.length > 0 ? orders[0].id : ids.get()));
+		simulator.submit(Arrays.asList(orders), types, oco);
+		return ids(orders);
+	}
+
+	private OrderRequest[] orders(Batch batch) {
+		final OrderRequest[] orders = new OrderRequest[batch.legs.size()];
+		final long time = DTime.Clock.getTime();
+		for(int i = 0; i < orders.length; i++){
+			final Batch.Leg l = batch.legs.get(i);
+			double price = l.price;
+			if(FillSimulator.Type.Market.equals(l.type)){
+				final Tradable trad = (Tradable)Execution.Manager.dynami().assets().getBySymbol(l.symbol);
+				price = (l.quantity>0)?trad.book.ask().price:trad.book.bid().price;
+			}
+			orders[i] = new OrderRequest(ids.getAndIncrement(), time, l.symbol, l.quantity, price, l.note, l.handler);
+		}
+		return orders;
+	}
+
+	/**
+	 * Adds a working order to the pending ones and publishes it, stops are published once triggered
+	 */
+	private void register(OrderRequest order, FillSimulator.Type type) {
+		requests.add(order);
+		if(!FillSimulator.Type.Stop.equals(type)){
+			Execution.Manager.msg().async(Topics.ORDER_REQUESTS.topic, order);
+		}
+	}
+
+	private static void trace(String line){
+		Execution.Manager.msg().async(Topics.TRACE.topic, new ITraceService.Trace(Type.Debug, DTime.Clock.getTime(), "OrderService", line));
+	}
+
+	private static long[] ids(OrderRequest[] orders){
+		final long[] ids = new long[orders.length];
+		for(int i = 0; i < orders.length; i++){
+			ids[i] = orders[i].id;
+		}
+		return ids;
+	}
+
 	@Override
 	public void removePendings() {
 		requests.clear();
+		simulator.clear();
 	}
 
+	/**
+	 * Executed and cancelled orders are archived: the returned instance is rebuilt from the archive,
+	 * has no handler and isn't the one submitted, compare orders by id.
+	 */
 	@Override
 	public OrderRequest getOrderById(long id) {
-		return requests.stream()
-				.filter(o->o.id == id)
-				.findFirst()
-				.get();
+		return requests.get(id);
 	}
 
 	@Override
@@ -180,38 +292,89 @@ public class OrderService extends Service implements IOrderService {
 			return null;
 	}
 
+	/**
+	 * As a venue does, rejects the cancel of an order already filled, even if its execution hasn't been reported yet
+	 * @return false if the order is unknown, no longer working or already executed or cancelled
+	 */
 	@Override
 	public boolean cancelOrder(long id) {
-		OrderRequest req = getOrderById(id);
-		if(req != null){
-			req.updateStatus(Status.Cancelled);
-			return true;
-		}
-		return false;
+		final OrderRequest req = requests.live(id);
+		if(req == null || !simulator.cancel(req)) return false;
+		return requests.cancel(id) != null;
 	}
 
 	@Override
 	public List<OrderRequest> getPendingOrders() {
-		return requests
-				.stream()
-				.filter(o->o.getStatus().equals(Status.Pending))
-				.collect(Collectors.toList());
+		return requests.get(Status.Pending);
 	}
 
 	@Override
 	public boolean thereArePendingOrders() {
-		return requests.stream()
-				.filter(o->o.getStatus().equals(Status.Pending))
-				.count()>0;
+		return requests.hasPending();
 	}
 
 	@Override
 	public boolean thereArePendingOrders(String symbol) {
-		return requests.stream()
-				.filter(o->o.symbol.equals(symbol))
-				.filter(o->o.status.get().equals(Status.Pending))
-				.count()>0;
+		return requests.hasPending(symbol);
 	}
-}
 
+	/**
+	 * Orders to be submitted together
+	 * @see OrderService#submit(Batch)
+	 * @see OrderService#submitOco(Batch)
+	 */
+	public static class Batch {
+		private final List<Leg> legs = new ArrayList<>();
+
+		public Batch limit(String symbol, double price, long quantity, String note, IOrderHandler handler) {
+			return add(FillSimulator.Type.Limit, symbol, price, quantity, note, handler);
+		}
+
+		public Batch limit(String symbol, double price, long quantity) {
+			return limit(symbol, price, quantity, "", new IOrderService.IOrderHandler() {});
+		}
+
+		public Batch market(String symbol, long quantity, String note, IOrderHandler handler) {
+			return add(FillSimulator.Type.Market, symbol, Double.NaN, quantity, note, handler);
+		}
 
+		public Batch market(String symbol, long quantity) {
+			return market(symbol, quantity, "", new IOrderService.IOrderHandler() {});
+		}
+
+		public Batch stop(String symbol, double stop, long quantity, String note, IOrderHandler handler) {
+			return add(FillSimulator.Type.Stop, symbol, stop, quantity, note, handler);
+		}
+
+		public Batch stop(String symbol, double stop, long quantity) {
+			return stop(symbol, stop, quantity, "", new IOrderService.IOrderHandler() {});
+		}
+
+		public int size() {
+			return legs.size();
+		}
+
+		private Batch add(FillSimulator.Type type, String symbol, double price, long quantity, String note, IOrderHandler handler) {
+			legs.add(new Leg(type, symbol, price, quantity, note, handler));
+			return this;
+		}
+
+		private static class Leg {
+			private final FillSimulator.Type type;
+			private final String symbol;
+			private final double price;
+			private final long quantity;
+			private final String note;
+			private final IOrderHandler handler;
+
+			private Leg(FillSimulator.Type type, String symbol, double price, long quantity, String note, IOrderHandler handler) {
+				this.type = type;
+				this.symbol = symbol;
+				this.price = price;
+				this.quantity = quantity;
+				this.note = note;
+				this.handler = handler;
+			}
+		}
+	}
+}
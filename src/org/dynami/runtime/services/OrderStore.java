@@ -0,0 +1,282 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.dynami.core.orders.OrderRequest;
+import org.dynami.core.services.IOrderService.Status;
+
+/**
+ * Order requests indexed by id, with secondary indexes by status and, for pending orders, by symbol.
+ * Only live orders are indexed, executed and cancelled ones are moved to an {@link OrderArchive}.
+ * Status changes must go through {@link #execute(OrderRequest, long)} or {@link #update(OrderRequest, Status)}
+ * to keep the indexes consistent.
+ * @author Atria
+ */
+class OrderStore {
+	private final LongMap<OrderRequest> byId = new LongMap<>();
+	private final Map<Status, Set<OrderRequest>> byStatus = new EnumMap<>(Status.class);
+	private final Map<String, Set<OrderRequest>> pendingBySymbol = new HashMap<>();
+	private final OrderArchive archive = new OrderArchive();
+
+	synchronized void add(OrderRequest order){
+		final OrderRequest previous = byId.remove(order.id);
+		if(previous != null) unindex(previous, previous.getStatus());
+		place(order, order.getStatus());
+	}
+
+	/**
+	 * Live orders are returned as submitted, archived ones are rebuilt from the archive on every call:
+	 * a new instance without handler, equal to the submitted one only by id and content.
+	 * @param id
+	 * @return the order, null if unknown
+	 */
+	synchronized OrderRequest get(long id){
+		final OrderRequest order = byId.get(id);
+		return order != null ? order : archive.get(id);
+	}
+
+	/**
+	 * @param id
+	 * @return the order as submitted, null if unknown or already executed or cancelled
+	 */
+	synchronized OrderRequest live(long id){
+		return byId.get(id);
+	}
+
+	/**
+	 * Marks a pending order as executed
+	 * @param order
+	 * @param time execution time
+	 * @return false if the order wasn't pending anymore
+	 */
+	synchronized boolean execute(OrderRequest order, long time){
+		if(!order.status.compareAndSet(Status.Pending, Status.Executed)) return false;
+		order.setExecutionTime(time);
+		move(order, Status.Pending, Status.Executed);
+		return true;
+	}
+
+	/**
+	 * Cancels a live order, executed and cancelled ones are left untouched
+	 * @param id
+	 * @return the cancelled order, null if unknown or already in a final status
+	 */
+	synchronized OrderRequest cancel(long id){
+		final OrderRequest order = byId.get(id);
+		if(order == null) return null;
+		update(order, Status.Cancelled);
+		return order;
+	}
+
+	/**
+	 * Changes the order status whatever it is
+	 * @return the previous status
+	 */
+	synchronized Status update(OrderRequest order, Status status){
+		final Status previous = order.status.getAndSet(status);
+		move(order, previous, status);
+		return previous;
+	}
+
+	/**
+	 * @return orders with the given status, live ones in submission order, archived ones in archival order
+	 */
+	synchronized List<OrderRequest> get(Status status){
+		if(isFinal(status)) return archive.get(status);
+		final Set<OrderRequest> orders = byStatus.get(status);
+		return orders == null ? new ArrayList<>() : new ArrayList<>(orders);
+	}
+
+	synchronized boolean hasPending(){
+		final Set<OrderRequest> orders = byStatus.get(Status.Pending);
+		return orders != null && !orders.isEmpty();
+	}
+
+	synchronized boolean hasPending(String symbol){
+		final Set<OrderRequest> orders = pendingBySymbol.get(symbol);
+		return orders != null && !orders.isEmpty();
+	}
+
+	/**
+	 * @return number of live orders
+	 */
+	synchronized int size(){
+		return byId.size();
+	}
+
+	synchronized int archived(){
+		return archive.size();
+	}
+
+	synchronized void clear(){
+		archive.clear();
+		byId.clear();
+		byStatus.clear();
+		pendingBySymbol.clear();
+	}
+
+	private void move(OrderRequest order, Status previous, Status status){
+		if(byId.get(order.id) != order) return;
+		unindex(order, previous);
+		if(isFinal(status)){
+			byId.remove(order.id);
+			archive.append(order);
+		} else {
+			index(order, status);
+		}
+	}
+
+	private void place(OrderRequest order, Status status){
+		if(isFinal(status)){
+			archive.append(order);
+		} else {
+			byId.put(order.id, order);
+			index(order, status);
+		}
+	}
+
+	private static boolean isFinal(Status status){
+		return Status.Executed.equals(status) || Status.Cancelled.equals(status);
+	}
+
+	private void index(OrderRequest order, Status status){
+		byStatus.computeIfAbsent(status, s->new LinkedHashSet<>()).add(order);
+		if(Status.Pending.equals(status)){
+			pendingBySymbol.computeIfAbsent(order.symbol, s->new LinkedHashSet<>()).add(order);
+		}
+	}
+
+	private void unindex(OrderRequest order, Status status){
+		final Set<OrderRequest> orders = byStatus.get(status);
+		if(orders != null) orders.remove(order);
+		if(Status.Pending.equals(status)){
+			final Set<OrderRequest> pendings = pendingBySymbol.get(order.symbol);
+			if(pendings != null && pendings.remove(order) && pendings.isEmpty()){
+				pendingBySymbol.remove(order.symbol);
+			}
+		}
+	}
+
+	/**
+	 * Open addressing map with primitive long keys and linear probing
+	 */
+	static final class LongMap<V> {
+		private static final long FREE = Long.MIN_VALUE;
+		private long[] keys;
+		private Object[] values;
+		private int size;
+
+		LongMap() {
+			allocate(16);
+		}
+
+		@SuppressWarnings("unchecked")
+		V get(long key){
+			if(key == FREE) return null;
+			final int mask = keys.length-1;
+			for(int i = slot(key, mask); keys[i] != FREE; i = (i+1) & mask){
+				if(keys[i] == key) return (V)values[i];
+			}
+			return null;
+		}
+
+		@SuppressWarnings("unchecked")
+		V put(long key, V value){
+			if(key == FREE) throw new IllegalArgumentException("Reserved key "+key);
+			final int mask = keys.length-1;
+			int i = slot(key, mask);
+			for(; keys[i] != FREE; i = (i+1) & mask){
+				if(keys[i] == key){
+					final V previous = (V)values[i];
+					values[i] = value;
+					return previous;
+				}
+			}
+			keys[i] = key;
+			values[i] = value;
+			if(++size > keys.length*3/4) rehash(keys.length*2);
+			return null;
+		}
+
+		@SuppressWarnings("unchecked")
+		V remove(long key){
+			if(key == FREE) return null;
+			final int mask = keys.length-1;
+			int i = slot(key, mask);
+			for(; keys[i] != key; i = (i+1) & mask){
+				if(keys[i] == FREE) return null;
+			}
+			final V previous = (V)values[i];
+			// shifts back the following entries of the cluster so that no lookup stops at the hole
+			for(int j = (i+1) & mask; keys[j] != FREE; j = (j+1) & mask){
+				final int home = slot(keys[j], mask);
+				if(((j - home) & mask) >= ((j - i) & mask)){
+					keys[i] = keys[j];
+					values[i] = values[j];
+					i = j;
+				}
+			}
+			keys[i] = FREE;
+			values[i] = null;
+			size--;
+			return previous;
+		}
+
+		int size(){
+			return size;
+		}
+
+		void clear(){
+			allocate(16);
+		}
+
+		private void rehash(int capacity){
+			final long[] oldKeys = keys;
+			final Object[] oldValues = values;
+			allocate(capacity);
+			final int mask = capacity-1;
+			for(int k = 0; k < oldKeys.length; k++){
+				if(oldKeys[k] == FREE) continue;
+				int i = slot(oldKeys[k], mask);
+				while(keys[i] != FREE) i = (i+1) & mask;
+				keys[i] = oldKeys[k];
+				values[i] = oldValues[k];
+				size++;
+			}
+		}
+
+		private void allocate(int capacity){
+			keys = new long[capacity];
+			Arrays.fill(keys, FREE);
+			values = new Object[capacity];
+			size = 0;
+		}
+
+		private static int slot(long key, int mask){
+			final long h = key * 0x9E3779B97F4A7C15L;
+			return (int)(h ^ (h >>> 32)) & mask;
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.services;
+
+/**
+ * Fill model with constant latencies and a square root slippage curve:
+ * <br><code>price * (slippage + impact * sqrt(quantity / displayed))</code>
+ * @author Atria
+ */
+public class SimulatedFillModel implements FillModel {
+	private final long submissionLatency;
+	private final long reportLatency;
+	private final boolean partialFills;
+	private final boolean queuePosition;
+	private final double slippage;
+	private final double impact;
+
+	/**
+	 * @param submissionLatency milliseconds before an order reaches the market
+	 * @param reportLatency milliseconds before an execution reaches the strategy
+	 * @param partialFills limit executions to the quoted quantity
+	 * @param queuePosition execute the quantity ahead at the same price first
+	 * @param slippage fixed slippage, as a fraction of price
+	 * @param impact market impact coefficient, as a fraction of price
+	 */
+	public SimulatedFillModel(long submissionLatency, long reportLatency, boolean partialFills, boolean queuePosition, double slippage, double impact) {
+		if(submissionLatency < 0 || reportLatency < 0) throw new IllegalArgumentException("Latency can't be negative");
+		if(slippage < 0 || impact < 0) throw new IllegalArgumentException("Slippage can't be negative");
+		this.submissionLatency = submissionLatency;
+		this.reportLatency = reportLatency;
+		this.partialFills = partialFills;
+		this.queuePosition = queuePosition;
+		this.slippage = slippage;
+		this.impact = impact;
+	}
+
+	@Override
+	public long submissionLatency() {
+		return submissionLatency;
+	}
+
+	@Override
+	public long reportLatency() {
+		return reportLatency;
+	}
+
+	@Override
+	public boolean partialFills() {
+		return partialFills;
+	}
+
+	@Override
+	public boolean queuePosition() {
+		return queuePosition;
+	}
+
+	@Override
+	public double slippage(double price, long quantity, long displayed) {
+		final double participation = displayed > 0 ? (double)quantity/displayed : 1;
+		return Math.abs(price) * (slippage + impact * Math.sqrt(participation));
+	}
+
+	@Override
+	public String toString() {
+		return "SimulatedFillModel [submissionLatency=" + submissionLatency + ", reportLatency=" + reportLatency + ", partialFills=" + partialFills
+				+ ", queuePosition=" + queuePosition + ", slippage=" + slippage + ", impact=" + impact + "]";
+	}
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.sweep;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.dynami.runtime.config.ClassSettings;
+import org.dynami.runtime.config.ParamSettings;
+import org.dynami.runtime.config.ParamValue;
+import org.dynami.runtime.config.StrategySettings;
+
+/**
+ * Builds the cartesian product of strategy and stage parameters, stepping each swept parameter
+ * from its min to its max as declared by {@link org.dynami.core.config.Config.Param}.
+ * Parameters not swept keep the value of the base settings.
+ * @author Atria
+ */
+public class SweepGrid {
+	/**
+	 * Class name used for the strategy parameters when the strategy has no {@link org.dynami.core.config.Config.Settings}
+	 */
+	public static final String STRATEGY = "strategy";
+	private final StrategySettings base;
+	private final Map<String, List<Object>> axes = new LinkedHashMap<>();
+
+	/**
+	 * @param base settings extracted from the strategy jar, e.g. {@link org.dynami.runtime.models.StrategyComponents#strategySettings}
+	 */
+	public SweepGrid(StrategySettings base) {
+		this.base = base;
+	}
+
+	/**
+	 * Sweeps the parameter over the min/max/step range declared on the field
+	 * @param className strategy or stage class name
+	 * @param fieldName
+	 * @return this grid
+	 */
+	public SweepGrid sweep(String className, String fieldName){
+		final ParamSettings ps = param(base, className, fieldName);
+		if(ps.getMax() == Double.MAX_VALUE){
+			throw new IllegalArgumentException("Parameter "+key(className, fieldName)+" has no max value");
+		}
+		return sweep(className, fieldName, ps.getMin(), ps.getMax(), ps.getStep());
+	}
+
+	/**
+	 * Sweeps the parameter over a custom range
+	 * @return this grid
+	 */
+	public SweepGrid sweep(String className, String fieldName, double min, double max, double step){
+		final ParamSettings ps = param(base, className, fieldName);
+		if(step <= 0){
+			throw new IllegalArgumentException("Parameter "+key(className, fieldName)+" step has to be positive");
+		}
+		final Class<?> type = ps.getParamValue().getType();
+		final List<Object> values = new ArrayList<>();
+		// the tolerance avoids losing the max value because of rounding
+		final long steps = (long)Math.floor((max-min)/step+1e-9);
+		for(long i = 0; i <= steps; i++){
+			// decimal arithmetic, so 0.1 steps give 0.3 and not 0.30000000000000004
+			final Object value = convert(type, BigDecimal.valueOf(min).add(BigDecimal.valueOf(step).multiply(BigDecimal.valueOf(i))).doubleValue());
+			if(!values.contains(value)) values.add(value);
+		}
+		axes.put(key(className, fieldName), values);
+		return this;
+	}
+
+	/**
+	 * Sweeps every numeric parameter with a bounded range
+	 * @return this grid
+	 */
+	public SweepGrid sweepAll(){
+		forEachClass(base, (className, cs)->{
+			cs.getParams().forEach((field, ps)->{
+				if(ps.getMax() != Double.MAX_VALUE && isNumeric(ps.getParamValue().getType())){
+					sweep(className, field);
+				}
+			});
+		});
+		return this;
+	}
+
+	/**
+	 * @return number of combinations
+	 */
+	public long size(){
+		long size = 1;
+		for(List<Object> values : axes.values()){
+			size *= values.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return a copy of the base settings for every combination of the swept parameters
+	 */
+	public List<StrategySettings> build(){
+		final List<StrategySettings> grid = new ArrayList<>();
+		final List<String> keys = new ArrayList<>(axes.keySet());
+		final int[] idx = new int[keys.size()];
+		for(long n = size(), i = 0; i < n; i++){
+			final StrategySettings settings = copy(base);
+			for(int k = 0; k < keys.size(); k++){
+				final String[] cf = keys.get(k).split("#");
+				param(settings, cf[0], cf[1]).getParamValue().setValue(axes.get(keys.get(k)).get(idx[k]));
+			}
+			grid.add(settings);
+			// odometer increment
+			for(int k = keys.size()-1; k >= 0; k--){
+				if(++idx[k] < axes.get(keys.get(k)).size()) break;
+				idx[k] = 0;
+			}
+		}
+		return grid;
+	}
+
+	/**
+	 * @return names of the swept parameters, as &lt;class name&gt;#&lt;field name&gt;
+	 */
+	public List<String> axes(){
+		return Collections.unmodifiableList(new ArrayList<>(axes.keySet()));
+	}
+
+	/**
+	 * Flattens parameter values of every class, keyed by &lt;class name&gt;#&lt;field name&gt;.
+	 * Only values which can be shared across class loaders are kept: numbers, booleans, characters and strings.
+	 * @param settings
+	 * @return
+	 */
+	public static Map<String, Object> values(StrategySettings settings){
+		final Map<String, Object> values = new LinkedHashMap<>();
+		forEachClass(settings, (className, cs)->{
+			cs.getParams().forEach((field, ps)->{
+				final Object value = (ps.getParamValue() != null)?ps.getParamValue().getValue():null;
+				if(value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof String){
+					values.put(key(className, field), value);
+				}
+			});
+		});
+		return values;
+	}
+
+	/**
+	 * Applies values produced by {@link #values(StrategySettings)} to the settings
+	 * @param settings
+	 * @param values
+	 */
+	public static void apply(StrategySettings settings, Map<String, Object> values){
+		forEachClass(settings, (className, cs)->{
+			cs.getParams().forEach((field, ps)->{
+				final String key = key(className, field);
+				if(values.containsKey(key)){
+					ps.getParamValue().setValue(values.get(key));
+				}
+			});
+		});
+	}
+
+	/**
+	 * Strategies without {@link org.dynami.core.config.Config.Settings} have no class name in their settings
+	 */
+	private static String strategyName(StrategySettings settings){
+		final String type = settings.getStrategy().getType();
+		return (type != null)?type:STRATEGY;
+	}
+
+	static String key(String className, String fieldName){
+		return className+"#"+fieldName;
+	}
+
+	private static void forEachClass(StrategySettings settings, BiConsumer<String, ClassSettings> consumer){
+		if(settings.getStrategy() != null){
+			consumer.accept(strategyName(settings), settings.getStrategy());
+		}
+		settings.getStages().forEach(consumer);
+	}
+
+	private static ParamSettings param(StrategySettings settings, String className, String fieldName){
+		ClassSettings cs = settings.getStageSettings(className);
+		if(cs == null && settings.getStrategy() != null && className.equals(strategyName(settings))){
+			cs = settings.getStrategy();
+		}
+		final ParamSettings ps = (cs != null)?cs.getParams().get(fieldName):null;
+		if(ps == null){
+			throw new IllegalArgumentException("Unknown parameter "+key(className, fieldName));
+		}
+		return ps;
+	}
+
+	private static StrategySettings copy(StrategySettings settings){
+		final StrategySettings copy = new StrategySettings();
+		if(settings.getStrategy() != null){
+			copy.setStrategy(copy(settings.getStrategy()));
+		}
+		final Map<String, ClassSettings> stages = new LinkedHashMap<>();
+		settings.getStages().forEach((k, cs)->stages.put(k, copy(cs)));
+		copy.setStages(stages);
+		return copy;
+	}
+
+	private static ClassSettings copy(ClassSettings cs){
+		final ClassSettings copy = new ClassSettings();
+		copy.setType(cs.getType());
+		copy.setName(cs.getName());
+		copy.setDescription(cs.getDescription());
+		cs.getParams().forEach((k, ps)->{
+			final ParamSettings p = new ParamSettings();
+			p.setParamName(ps.getParamName());
+			p.setFieldName(ps.getFieldName());
+			p.setDescription(ps.getDescription());
+			p.setMin(ps.getMin());
+			p.setMax(ps.getMax());
+			p.setStep(ps.getStep());
+			p.setInnerType(ps.getInnerType());
+			p.setPossibileValues(ps.getPossibileValues());
+			if(ps.getParamValue() != null){
+				p.setParamValue(new ParamValue(ps.getParamValue().getType(), ps.getParamValue().getValue()));
+			}
+			copy.getParams().put(k, p);
+		});
+		return copy;
+	}
+
+	private static boolean isNumeric(Class<?> type){
+		return type != null && (Number.class.isAssignableFrom(type) || (type.isPrimitive() && !boolean.class.equals(type) && !char.class.equals(type)));
+	}
+
+	private static Object convert(Class<?> type, double value){
+		if(int.class.equals(type) || Integer.class.equals(type)){
+			return (int)Math.round(value);
+		} else if(long.class.equals(type) || Long.class.equals(type)){
+			return Math.round(value);
+		} else if(short.class.equals(type) || Short.class.equals(type)){
+			return (short)Math.round(value);
+		} else if(byte.class.equals(type) || Byte.class.equals(type)){
+			return (byte)Math.round(value);
+		} else if(float.class.equals(type) || Float.class.equals(type)){
+			return (float)value;
+		} else if(double.class.equals(type) || Double.class.equals(type)){
+			return value;
+		}
+		throw new IllegalArgumentException("Type "+type+" can't be swept");
+	}
+}
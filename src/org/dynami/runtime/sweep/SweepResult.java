@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.sweep;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Outcome of a single backtest of a parameter sweep.
+ * @author Atria
+ */
+public class SweepResult {
+	/**
+	 * strategy parameters, keyed by &lt;class name&gt;#&lt;field name&gt;
+	 */
+	public final Map<String, Object> params;
+	/**
+	 * portfolio figures at the end of the backtest, see {@link SweepWorker} constants, empty on error
+	 */
+	public final Map<String, Double> metrics;
+	public final Throwable error;
+
+	public SweepResult(Map<String, Object> params, Map<String, Double> metrics, Throwable error) {
+		this.params = Collections.unmodifiableMap(params);
+		this.metrics = Collections.unmodifiableMap(metrics);
+		this.error = error;
+	}
+
+	public double metric(String name){
+		final Double value = metrics.get(name);
+		return (value != null)?value:Double.NaN;
+	}
+
+	public boolean isFailed(){
+		return error != null;
+	}
+
+	@Override
+	public String toString() {
+		return "SweepResult [params=" + params + ", metrics=" + metrics + ((error != null)?", error=" + error:"") + "]";
+	}
+}
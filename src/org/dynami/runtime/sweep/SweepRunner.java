@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.sweep;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dynami.runtime.config.StrategySettings;
+
+/**
+ * Runs a parameter sweep as many isolated backtests in parallel, within the same JVM.
+ * <br>Execution manager, message broker and clock are singletons, so every backtest gets its own class loader
+ * over the runtime class path: each run owns its bus, service bus and DTime.Clock,
+ * and runs in deterministic backtest mode on a single pool thread.
+ * <pre>
+ * StrategySettings base = new StrategyClassLoader(jar, loader).getStrategyComponents().strategySettings;
+ * List&lt;SweepResult&gt; ranked = new SweepRunner(jar, TextFileDataHandler.class.getName())
+ * 		.run(new SweepGrid(base).sweepAll().build());
+ * </pre>
+ * @author Atria
+ */
+public class SweepRunner {
+	private final String strategyJarPath;
+	private final String dataHandlerClass;
+	private final Map<String, Object> dataHandlerParams = new HashMap<>();
+	private URL[] classPath = classPath();
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private String rankBy = SweepWorker.REALIZED;
+
+	/**
+	 * @param strategyJarPath
+	 * @param dataHandlerClass replaying data handler class name, e.g. TextFileDataHandler
+	 */
+	public SweepRunner(String strategyJarPath, String dataHandlerClass) {
+		this.strategyJarPath = strategyJarPath;
+		this.dataHandlerClass = dataHandlerClass;
+	}
+
+	/**
+	 * @param parallelism number of concurrent backtests, number of available processors by default
+	 */
+	public SweepRunner parallelism(int parallelism){
+		this.parallelism = Math.max(1, parallelism);
+		return this;
+	}
+
+	/**
+	 * @param metric results are sorted descending by this metric, {@link SweepWorker#REALIZED} by default,
+	 * runs without the metric come last
+	 */
+	public SweepRunner rankBy(String metric){
+		this.rankBy = metric;
+		return this;
+	}
+
+	/**
+	 * Sets a data handler parameter, shared by every run. Values have to be JDK types, e.g. File, Long, Double.
+	 * @param fieldName
+	 * @param value
+	 */
+	public SweepRunner dataHandlerParam(String fieldName, Object value){
+		dataHandlerParams.put(fieldName, value);
+		return this;
+	}
+
+	/**
+	 * @param classPath class path of each isolated run, the current JVM class path by default
+	 */
+	public SweepRunner classPath(URL... classPath){
+		this.classPath = classPath;
+		return this;
+	}
+
+	/**
+	 * Runs a backtest for every settings of the grid and waits for all of them.
+	 * @param grid e.g. {@link SweepGrid#build()}
+	 * @return results sorted from best to worst, failed runs last
+	 * @throws InterruptedException
+	 */
+	public List<SweepResult> run(List<StrategySettings> grid) throws InterruptedException {
+		final AtomicInteger threads = new AtomicInteger(0);
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, grid.size())), r->{
+			final Thread t = new Thread(r, "Dynami-Sweep-"+threads.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		try {
+			final List<Map<String, Object>> params = new ArrayList<>();
+			final List<Future<Map<String, Double>>> futures = new ArrayList<>();
+			for(StrategySettings settings : grid){
+				final Map<String, Object> values = SweepGrid.values(settings);
+				params.add(values);
+				futures.add(executor.submit(()->runIsolated(values)));
+			}
+			final List<SweepResult> results = new ArrayList<>();
+			for(int i = 0; i < futures.size(); i++){
+				try {
+					results.add(new SweepResult(params.get(i), futures.get(i).get(), null));
+				} catch (ExecutionException e) {
+					results.add(new SweepResult(params.get(i), Collections.emptyMap(), e.getCause()));
+				}
+			}
+			// missing metrics rank last among successful runs, as NaN would otherwise sort first once reversed
+			results.sort(Comparator.comparing(SweepResult::isFailed)
+					.thenComparing(Comparator.comparingDouble((SweepResult r)->rank(r.metric(rankBy))).reversed()));
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static double rank(double metric){
+		return Double.isNaN(metric)?Double.NEGATIVE_INFINITY:metric;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Double> runIsolated(Map<String, Object> params) throws Exception {
+		// parent is the platform loader, so no Dynami class is shared with other runs
+		try(URLClassLoader loader = new URLClassLoader(classPath, ClassLoader.getPlatformClassLoader())){
+			final Thread current = Thread.currentThread();
+			final ClassLoader previous = current.getContextClassLoader();
+			current.setContextClassLoader(loader);
+			try {
+				final Callable<Map<String, Double>> worker = (Callable<Map<String, Double>>)loader.loadClass(SweepWorker.class.getName())
+						.getConstructor(String.class, String.class, Map.class, Map.class)
+						.newInstance(strategyJarPath, dataHandlerClass, dataHandlerParams, params);
+				return worker.call();
+			} finally {
+				current.setContextClassLoader(previous);
+			}
+		}
+	}
+
+	private static URL[] classPath(){
+		final String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+		final URL[] urls = new URL[entries.length];
+		try {
+			for(int i = 0; i < entries.length; i++){
+				urls[i] = new File(entries[i]).toURI().toURL();
+			}
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+		return urls;
+	}
+}
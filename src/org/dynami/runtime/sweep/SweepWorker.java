@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 Alessandro Atria - a.atria@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dynami.runtime.sweep;
+
+import java.lang.reflect.Field;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.dynami.core.config.Config;
+import org.dynami.core.services.IPortfolioService;
+import org.dynami.runtime.IServiceBus;
+import org.dynami.runtime.Service;
+import org.dynami.runtime.bus.Msg;
+import org.dynami.runtime.config.StrategySettings;
+import org.dynami.runtime.impl.Execution;
+import org.dynami.runtime.impl.StrategyClassLoader;
+import org.dynami.runtime.services.AssetService;
+import org.dynami.runtime.services.DataService;
+import org.dynami.runtime.services.OrderService;
+import org.dynami.runtime.services.PortfolioService;
+import org.dynami.runtime.services.TraceService;
+
+/**
+ * Runs a single backtest. It is loaded by a dedicated class loader for every run,
+ * so Execution.Manager, Msg.Broker and DTime.Clock are private to the run.
+ * <br>Arguments and results are plain JDK types, the only ones shared with the {@link SweepRunner} class loader.
+ * @author Atria
+ */
+public class SweepWorker implements Callable<Map<String, Double>> {
+	public static final String REALIZED = "realized";
+	public static final String UNREALIZED = "unrealized";
+	public static final String COMMISSIONS = "commissions";
+	public static final String BUDGET = "budget";
+	public static final String TRADES = "trades";
+	public static final String ELAPSED_MILLIS = "elapsedMillis";
+
+	private final String strategyJarPath;
+	private final String dataHandlerClass;
+	private final Map<String, Object> dataHandlerParams;
+	private final Map<String, Object> params;
+
+	/**
+	 * @param strategyJarPath
+	 * @param dataHandlerClass replaying data handler, it must implement {@link org.dynami.runtime.IDataHandler.Replay}
+	 * @param dataHandlerParams values for the data handler {@link Config.Param} fields, keyed by field name
+	 * @param params strategy parameters as produced by {@link SweepGrid#values(StrategySettings)}
+	 */
+	public SweepWorker(String strategyJarPath, String dataHandlerClass, Map<String, Object> dataHandlerParams, Map<String, Object> params) {
+		this.strategyJarPath = strategyJarPath;
+		this.dataHandlerClass = dataHandlerClass;
+		this.dataHandlerParams = dataHandlerParams;
+		this.params = params;
+	}
+
+	@Override
+	public Map<String, Double> call() throws Exception {
+		final long start = System.currentTimeMillis();
+		try {
+			final IServiceBus serviceBus = Execution.Manager.getServiceBus();
+			serviceBus.registerService(new AssetService(), 0);
+			serviceBus.registerService(new TraceService(), 10);
+			serviceBus.registerService(new DataService(), 30);
+			serviceBus.registerService(new OrderService(), 40);
+			serviceBus.registerService(new PortfolioService(), 50);
+			serviceBus.registerService(dataHandler(), 100);
+
+			final StrategySettings settings;
+			try(StrategyClassLoader loader = new StrategyClassLoader(strategyJarPath, getClass().getClassLoader())){
+				settings = loader.getStrategyComponents().strategySettings;
+			}
+			SweepGrid.apply(settings, params);
+
+			if(!Execution.Manager.setBacktest(true)
+					|| !Execution.Manager.select(settings, strategyJarPath)
+					|| !Execution.Manager.init(null)
+					|| !Execution.Manager.load()
+					|| !Execution.Manager.run()){
+				throw new IllegalStateException("Unable to run backtest with "+params);
+			}
+
+			final IPortfolioService portfolio = Execution.Manager.dynami().portfolio();
+			final Map<String, Double> results = new LinkedHashMap<>();
+			results.put(REALIZED, portfolio.realized());
+			results.put(UNREALIZED, portfolio.unrealized());
+			results.put(COMMISSIONS, portfolio.commissions());
+			results.put(BUDGET, portfolio.getCurrentBudget());
+			results.put(TRADES, (double)portfolio.getClosedPositions().size());
+			results.put(ELAPSED_MILLIS, (double)(System.currentTimeMillis()-start));
+			return results;
+		} finally {
+			Execution.Manager.stop();
+			Execution.Manager.dispose();
+			// the engine thread would keep the class loader alive
+			Msg.Broker.dispose();
+		}
+	}
+
+	private Service dataHandler() throws Exception {
+		final Service handler = (Service)Class.forName(dataHandlerClass, true, getClass().getClassLoader()).getDeclaredConstructor().newInstance();
+		// parameters can be declared by the handler superclasses, e.g. ReplayDataHandler
+		for(Class<?> c = handler.getClass(); c != Service.class && c != null; c = c.getSuperclass()){
+			for(Field f : c.getDeclaredFields()){
+				if(f.isAnnotationPresent(Config.Param.class) && dataHandlerParams.containsKey(f.getName())){
+					f.setAccessible(true);
+					f.set(handler, dataHandlerParams.get(f.getName()));
+				}
+			}
+		}
+		return handler;
+	}
+}
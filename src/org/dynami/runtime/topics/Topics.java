@@ -15,6 +15,8 @@
  */
 package org.dynami.runtime.topics;
 
+import java.util.function.Function;
+
 import javax.swing.text.Position;
 
 import org.dynami.core.Event;
@@ -23,6 +25,7 @@ import org.dynami.core.assets.Book;
 import org.dynami.core.orders.OrderRequest;
 import org.dynami.core.services.ITraceService;
 import org.dynami.runtime.IServiceBus.ServiceStatus;
+import org.dynami.runtime.bus.OverflowPolicy;
 import org.dynami.runtime.plot.PlotData;
 
 public enum Topics {
@@ -30,14 +33,14 @@ public enum Topics {
 	TICK("b", Book.Orders.class),
 	CANCEL_REQUESTS("c", long.class), //order request id
 	INSTRUMENT("d", Asset.class),
-	ASK_ORDERS_BOOK_PREFIX("ea/", Book.Orders.class),
-	BID_ORDERS_BOOK_PREFIX("eb/", Book.Orders.class),
+	ASK_ORDERS_BOOK_PREFIX("ea/", Book.Orders.class, msg->((Book.Orders)msg).symbol),
+	BID_ORDERS_BOOK_PREFIX("eb/", Book.Orders.class, msg->((Book.Orders)msg).symbol),
 	INTERNAL_ERRORS("f", Throwable.class),
 	STRATEGY_ERRORS("g", Throwable.class),
-	STRATEGY_EVENT("h", Event.class),
+	STRATEGY_EVENT("h", Event.class, OverflowPolicy.Block),
 	SERVICE_STATUS("i", ServiceStatus.class),
-	EXECUTED_ORDER("j", Position.class),
-	ORDER_REQUESTS("o", OrderRequest.class),
+	EXECUTED_ORDER("j", Position.class, OverflowPolicy.Block),
+	ORDER_REQUESTS("o", OrderRequest.class, OverflowPolicy.Block),
 	UI_ERRORS("p", Throwable.class),
 	CHART_SIGNAL("k", PlotData.class),
 	NEW_STAGE("w", String.class),
@@ -45,9 +48,28 @@ public enum Topics {
 
 	public final String topic;
 	public final Class<?> msgClass;
+	public final OverflowPolicy overflowPolicy;
+	/**
+	 * Not null for topics where only the latest message per key matters
+	 */
+	public final Function<Object, ?> conflationKey;
 
 	private Topics(String topic, Class<?> msgClass){
+		this(topic, msgClass, OverflowPolicy.DropOldest, null);
+	}
+
+	private Topics(String topic, Class<?> msgClass, OverflowPolicy overflowPolicy){
+		this(topic, msgClass, overflowPolicy, null);
+	}
+
+	private Topics(String topic, Class<?> msgClass, Function<Object, ?> conflationKey){
+		this(topic, msgClass, OverflowPolicy.Conflate, conflationKey);
+	}
+
+	private Topics(String topic, Class<?> msgClass, OverflowPolicy overflowPolicy, Function<Object, ?> conflationKey){
 		this.topic = topic;
 		this.msgClass = msgClass;
+		this.overflowPolicy = overflowPolicy;
+		this.conflationKey = conflationKey;
 	}
 }
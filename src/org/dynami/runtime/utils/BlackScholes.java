@@ -0,0 +1,171 @@
+package org.dynami.runtime.utils;
+
+/**
+ * Black &amp; Scholes kernel for European options, computing price and greeks from a single d1/d2 evaluation.
+ * <br>The normal CDF is the Abramowitz &amp; Stegun 26.2.17 approximation (absolute error below 7.5e-8),
+ * evaluated in Horner form.
+ * <br>Theta is per year and vega and rho per unit of volatility and rate.
+ * With no time left or no volatility the option is worth its intrinsic value.
+ */
+public class BlackScholes {
+	public static final double INV_SQRT_2PI = 1.0/Math.sqrt(2*Math.PI);
+	private static final double P = 0.2316419;
+	private static final double A1 = 0.31938153, A2 = -0.356563782, A3 = 1.781477937, A4 = -1.821255978, A5 = 1.330274429;
+	
+	/**
+	 * Price and greeks of an option, reusable across evaluations
+	 */
+	public static class Result {
+		public double price, delta, gamma, vega, theta, rho;
+		
+		@Override
+		public String toString() {
+			return "Result [price=" + price + ", delta=" + delta + ", gamma=" + gamma + ", vega=" + vega + ", theta=" + theta + ", rho=" + rho + "]";
+		}
+	}
+	
+	/**
+	 * Standard normal density
+	 */
+	public static double pdf(double x){
+		return INV_SQRT_2PI*Math.exp(-x*x/2);
+	}
+	
+	/**
+	 * Standard normal cumulative distribution
+	 */
+	public static double cdf(double x){
+		final double l = Math.abs(x);
+		final double k = 1.0/(1.0+P*l);
+		final double w = 1.0 - pdf(l)*k*(A1+k*(A2+k*(A3+k*(A4+k*A5))));
+		return (x < 0)?1.0-w:w;
+	}
+	
+	public static double price(boolean call, double stock, double strike, double volatility, double maturity, double interest){
+		if(!(maturity > 0) || !(volatility > 0)){
+			return intrinsic(call, stock, strike);
+		}
+		final double volaSqrtT = volatility*Math.sqrt(maturity);
+		final double d1 = (Math.log(stock/strike)+(interest+volatility*volatility/2)*maturity) / volaSqrtT;
+		final double d2 = d1-volaSqrtT;
+		final double discount = Math.exp(-interest*maturity);
+		if(call){
+			return stock*cdf(d1) - strike*discount*cdf(d2);
+		} else {
+			return strike*discount*cdf(-d2) - stock*cdf(-d1);
+		}
+	}
+	
+	/**
+	 * Computes price and all greeks sharing d1, d2, the density and the discount factor
+	 */
+	public static Result evaluate(boolean call, double stock, double strike, double volatility, double maturity, double interest, Result out){
+		if(!(maturity > 0) || !(volatility > 0)){
+			out.price = intrinsic(call, stock, strike);
+			out.delta = (call)?((stock > strike)?1:0):((stock < strike)?-1:0);
+			out.gamma = out.vega = out.theta = out.rho = 0;
+			return out;
+		}
+		final double sqrtT = Math.sqrt(maturity);
+		final double volaSqrtT = volatility*sqrtT;
+		final double d1 = (Math.log(stock/strike)+(interest+volatility*volatility/2)*maturity) / volaSqrtT;
+		final double d2 = d1-volaSqrtT;
+		final double discount = Math.exp(-interest*maturity);
+		final double density = pdf(d1);
+		final double nd1 = cdf(d1), nd2 = cdf(d2);
+		final double decay = -stock*density*volatility/(2*sqrtT);
+		out.gamma = density/(stock*volaSqrtT);
+		out.vega = stock*density*sqrtT;
+		if(call){
+			out.price = stock*nd1 - strike*discount*nd2;
+			out.delta = nd1;
+			out.theta = decay - interest*strike*discount*nd2;
+			out.rho = strike*maturity*discount*nd2;
+		} else {
+			// N(-x) = 1-N(x)
+			out.price = strike*discount*(1-nd2) - stock*(1-nd1);
+			out.delta = nd1-1;
+			out.theta = decay + interest*strike*discount*(1-nd2);
+			out.rho = -strike*maturity*discount*(1-nd2);
+		}
+		return out;
+	}
+	
+	/**
+	 * Single greek fast paths: each computes only the terms its greek needs, with the same formulas and
+	 * degenerate cases of {@link #evaluate(boolean, double, double, double, double, double, Result)}
+	 */
+	public static double delta(boolean call, double stock, double strike, double volatility, double maturity, double interest){
+		if(!(maturity > 0) || !(volatility > 0)){
+			return (call)?((stock > strike)?1:0):((stock < strike)?-1:0);
+		}
+		final double nd1 = cdf(d1(stock, strike, volatility*Math.sqrt(maturity), maturity, interest, volatility));
+		return (call)?nd1:nd1-1;
+	}
+	
+	public static double gamma(double stock, double strike, double volatility, double maturity, double interest){
+		if(!(maturity > 0) || !(volatility > 0)) return 0;
+		final double volaSqrtT = volatility*Math.sqrt(maturity);
+		return pdf(d1(stock, strike, volaSqrtT, maturity, interest, volatility))/(stock*volaSqrtT);
+	}
+	
+	public static double vega(double stock, double strike, double volatility, double maturity, double interest){
+		if(!(maturity > 0) || !(volatility > 0)) return 0;
+		final double sqrtT = Math.sqrt(maturity);
+		return stock*pdf(d1(stock, strike, volatility*sqrtT, maturity, interest, volatility))*sqrtT;
+	}
+	
+	public static double theta(boolean call, double stock, double strike, double volatility, double maturity, double interest){
+		if(!(maturity > 0) || !(volatility > 0)) return 0;
+		final double sqrtT = Math.sqrt(maturity);
+		final double volaSqrtT = volatility*sqrtT;
+		final double d1 = d1(stock, strike, volaSqrtT, maturity, interest, volatility);
+		final double nd2 = cdf(d1-volaSqrtT);
+		final double decay = -stock*pdf(d1)*volatility/(2*sqrtT);
+		final double discount = Math.exp(-interest*maturity);
+		return (call)?decay - interest*strike*discount*nd2:decay + interest*strike*discount*(1-nd2);
+	}
+	
+	public static double rho(boolean call, double stock, double strike, double volatility, double maturity, double interest){
+		if(!(maturity > 0) || !(volatility > 0)) return 0;
+		final double volaSqrtT = volatility*Math.sqrt(maturity);
+		final double nd2 = cdf(d1(stock, strike, volaSqrtT, maturity, interest, volatility)-volaSqrtT);
+		final double discount = Math.exp(-interest*maturity);
+		return (call)?strike*maturity*discount*nd2:-strike*maturity*discount*(1-nd2);
+	}
+	
+	private static double d1(double stock, double strike, double volaSqrtT, double maturity, double interest, double volatility){
+		return (Math.log(stock/strike)+(interest+volatility*volatility/2)*maturity) / volaSqrtT;
+	}
+	
+	/**
+	 * Prices options sharing the interest rate, element by element
+	 * @param prices output, same length as inputs
+	 */
+	public static void price(boolean[] calls, double[] stocks, double[] strikes, double[] volatilities, double[] maturities, double interest, double[] prices){
+		for(int i = 0; i < prices.length; i++){
+			prices[i] = price(calls[i], stocks[i], strikes[i], volatilities[i], maturities[i], interest);
+		}
+	}
+	
+	/**
+	 * Evaluates price and greeks of options sharing the interest rate, element by element, into the output arrays
+	 */
+	public static void evaluate(boolean[] calls, double[] stocks, double[] strikes, double[] volatilities, double[] maturities, double interest,
+			double[] prices, double[] deltas, double[] gammas, double[] vegas, double[] thetas, double[] rhos){
+		final Result r = new Result();
+		for(int i = 0; i < prices.length; i++){
+			evaluate(calls[i], stocks[i], strikes[i], volatilities[i], maturities[i], interest, r);
+			prices[i] = r.price;
+			deltas[i] = r.delta;
+			gammas[i] = r.gamma;
+			vegas[i] = r.vega;
+			thetas[i] = r.theta;
+			rhos[i] = r.rho;
+		}
+	}
+	
+	private static double intrinsic(boolean call, double stock, double strike){
+		return Math.max(0, (call)?stock-strike:strike-stock);
+	}
+}
@@ -27,76 +27,37 @@ public class EuropeanBlackScholes {
 	
 	
 	
-	private static MathNormalCDF mathNormalCDF= new MathNormalCDF();
-	
 	public static double price(Asset.Option.Type type, double stock, double strike, double volatility, double maturity, double interest){
-//		volatility=volatility/100;
-//		interest=interest/100;
-//		maturity=maturity/365;
-
-		double d1=(Math.log(stock/strike)+(interest+volatility*volatility/2)*maturity) / (volatility*Math.sqrt(maturity));
-		double d2=d1-volatility*Math.sqrt(maturity);
-
-		if (Asset.Option.Type.CALL.equals(type))
-			return stock*mathNormalCDF.computeCDF(d1) - strike*Math.exp(-interest*maturity)* mathNormalCDF.computeCDF(d2);
-	 	else
-			return strike*Math.exp(-interest*maturity)* mathNormalCDF.computeCDF(-d2) -stock*mathNormalCDF.computeCDF(-d1) ;
+		return BlackScholes.price(Asset.Option.Type.CALL.equals(type), stock, strike, volatility, maturity, interest);
+	}
+	
+	/**
+	 * Price and all greeks from a single evaluation, prefer it to the single greek methods when more than one is needed
+	 */
+	public static BlackScholes.Result evaluate(Asset.Option.Type type, double stock, double strike, double volatility, double maturity, double interest, BlackScholes.Result out){
+		return BlackScholes.evaluate(Asset.Option.Type.CALL.equals(type), stock, strike, volatility, maturity, interest, out);
 	}
 	
 	public static double delta(Asset.Option.Type type, double stock,double strike, double volatility, double maturity, double interest){
-//		volatility=volatility/100;
-//		interest=interest/100;
-//		maturity=maturity/365;
-
-		double d1=(Math.log(stock/strike)+(interest+volatility*volatility/2)*maturity) / (volatility*Math.sqrt(maturity));
-		if(Asset.Option.Type.CALL.equals(type)){
-			return mathNormalCDF.computeCDF(d1) ;
-		}else{
-			return mathNormalCDF.computeCDF(d1) -1 ;
-		}
+		return BlackScholes.delta(Asset.Option.Type.CALL.equals(type), stock, strike, volatility, maturity, interest);
 	}
 	
 	public static double gamma(Asset.Option.Type type, double stock,double strike, double volatility, double maturity, double interest){
-//		volatility=volatility/100;
-//		interest=interest/100;
-//		maturity=maturity/365;
-
-		double d1=(Math.log(stock/strike)+(interest+volatility*volatility/2)*maturity) / (volatility*Math.sqrt(maturity));
-
-		return (mathNormalCDF.computeCDF(d1))/(stock*volatility*Math.sqrt(maturity)) ;
+		return BlackScholes.gamma(stock, strike, volatility, maturity, interest);
 	}
 
 	/**
 	Theta measures the calculated option value's sensitivity to small changes in time till maturity.
 	*/
 	public static double theta(Asset.Option.Type type, double stock,double strike, double volatility, double maturity, double interest){
-//		volatility=volatility/100;
-//		interest=interest/100;
-//		maturity=maturity/365;
-
-		double d1=(Math.log(stock/strike)+(interest+volatility*volatility/2)*maturity) / (volatility*Math.sqrt(maturity));
-		double d2=d1-volatility*Math.sqrt(maturity);
-
-		if(Asset.Option.Type.CALL.equals(type)){
-			return (-stock*volatility*mathNormalCDF.computeCDF(d1))/(2*Math.sqrt(maturity))
-					-interest*strike*Math.exp(-interest*maturity)* mathNormalCDF.computeCDF(d2);
-		}else{
-			return (-stock*volatility*mathNormalCDF.computeCDF(d1))/(2*Math.sqrt(maturity))
-					+interest*strike*Math.exp(-interest*maturity)* mathNormalCDF.computeCDF(-d2);
-		}
+		return BlackScholes.theta(Asset.Option.Type.CALL.equals(type), stock, strike, volatility, maturity, interest);
 	}
 
 	/**
 	Vega measures the calculated option value's sensitivity to small changes in volatility.
 	*/
 	public static double vega(Asset.Option.Type type,double stock,double strike, double volatility, double maturity, double interest){
-//		volatility=volatility/100;
-//		interest=interest/100;
-//		maturity=maturity/365;
-
-		double d1=(Math.log(stock/strike)+(interest+volatility*volatility/2)*maturity) / (volatility*Math.sqrt(maturity));
-
-		return stock*Math.sqrt(maturity)*mathNormalCDF.computeCDF(d1);
+		return BlackScholes.vega(stock, strike, volatility, maturity, interest);
 	}
 
 
@@ -104,17 +65,6 @@ public class EuropeanBlackScholes {
 	Rho: The partial with respect to the interest rate.
 	*/
 	public static double rho(Asset.Option.Type type ,double stock,double strike, double volatility, double maturity, double interest){
-//		volatility=volatility/100;
-//		interest=interest/100;
-//		maturity=maturity/365;
-
-		double d1=(Math.log(stock/strike)+(interest+volatility*volatility/2)*maturity) / (volatility*Math.sqrt(maturity));
-		double d2=d1-volatility*Math.sqrt(maturity);
-
-		if(Asset.Option.Type.CALL.equals(type)){
-			return strike*maturity*Math.exp(-interest*maturity)*mathNormalCDF.computeCDF(d2) ;
-		}else{
-			return -strike*maturity*Math.exp(-interest*maturity)*mathNormalCDF.computeCDF(-d2) ;
-		}
+		return BlackScholes.rho(Asset.Option.Type.CALL.equals(type), stock, strike, volatility, maturity, interest);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,166 @@
+package org.dynami.runtime.utils;
+
+import org.dynami.core.assets.Asset;
+import org.dynami.core.utils.DUtils;
+
+/**
+ * Implied volatility of European options: Newton iterations guided by vega, starting from the
+ * Corrado-Miller approximation, with a fallback to Brent's method on the bracket found so far
+ * whenever a Newton step leaves it.
+ * <br>Prices outside the no arbitrage bounds have no implied volatility, NaN is returned.
+ */
+public class ImpliedVolatility {
+	public static final ImpliedVolatility DEFAULT = new ImpliedVolatility(1e-6, 50);
+	private static final double MIN_VOLA = 1e-6;
+	private static final double MAX_VOLA = 100;
+	private final double tolerance;
+	private final int maxIterations;
+	
+	/**
+	 * @param tolerance absolute difference between model and market price
+	 * @param maxIterations of Newton and Brent each
+	 */
+	public ImpliedVolatility(double tolerance, int maxIterations) {
+		this.tolerance = tolerance;
+		this.maxIterations = maxIterations;
+	}
+	
+	public double solve(boolean call, double stock, double strike, double maturity, double interest, double price){
+		return solve(call, stock, strike, maturity, interest, price, Double.NaN);
+	}
+	
+	/**
+	 * @param guess initial volatility, e.g. the one of the nearest strike; NaN to use the Corrado-Miller approximation
+	 */
+	public double solve(boolean call, double stock, double strike, double maturity, double interest, double price, double guess){
+		if(!(maturity > 0) || !(stock > 0) || !(strike > 0)) return Double.NaN;
+		final double discounted = strike*Math.exp(-interest*maturity);
+		final double lower = Math.max(0, (call)?stock-discounted:discounted-stock);
+		final double upper = (call)?stock:discounted;
+		if(!(price > lower) || !(price < upper)) return Double.NaN;
+		
+		double lo = MIN_VOLA, hi = MAX_VOLA;
+		double vola = (guess > MIN_VOLA && guess < MAX_VOLA)?guess:guess(call, stock, strike, maturity, interest, price);
+		final BlackScholes.Result r = new BlackScholes.Result();
+		for(int i = 0; i < maxIterations; i++){
+			BlackScholes.evaluate(call, stock, strike, vola, maturity, interest, r);
+			final double diff = r.price-price;
+			if(Math.abs(diff) < tolerance) return vola;
+			if(diff > 0){
+				hi = vola;
+			} else {
+				lo = vola;
+			}
+			final double next = vola-diff/r.vega;
+			if(!(r.vega > 0) || !(next > lo && next < hi)){
+				break;
+			}
+			vola = next;
+		}
+		return brent(call, stock, strike, maturity, interest, price, lo, hi);
+	}
+	
+	/**
+	 * Corrado-Miller approximation, reducing to Brenner-Subrahmanyam at the money
+	 */
+	public static double guess(boolean call, double stock, double strike, double maturity, double interest, double price){
+		final double discounted = strike*Math.exp(-interest*maturity);
+		// put call parity, the approximation is written for calls
+		final double c = (call)?price:price+stock-discounted;
+		final double half = (stock-discounted)/2;
+		final double q = c-half;
+		final double root = q*q-(stock-discounted)*(stock-discounted)/Math.PI;
+		final double guess = Math.sqrt(2*Math.PI/maturity)/(stock+discounted)*(q+Math.sqrt(Math.max(0, root)));
+		if(guess > MIN_VOLA && guess < MAX_VOLA) return guess;
+		// Brenner-Subrahmanyam
+		final double bs = Math.sqrt(2*Math.PI/maturity)*price/stock;
+		return (bs > MIN_VOLA && bs < MAX_VOLA)?bs:.2;
+	}
+	
+	private double brent(boolean call, double stock, double strike, double maturity, double interest, double price, double a, double b){
+		double fa = BlackScholes.price(call, stock, strike, a, maturity, interest)-price;
+		double fb = BlackScholes.price(call, stock, strike, b, maturity, interest)-price;
+		if(fa*fb > 0) return Double.NaN;
+		double c = a, fc = fa, d = b-a, e = d;
+		for(int i = 0; i < maxIterations; i++){
+			if(fb*fc > 0){
+				c = a;
+				fc = fa;
+				d = e = b-a;
+			}
+			if(Math.abs(fc) < Math.abs(fb)){
+				a = b; b = c; c = a;
+				fa = fb; fb = fc; fc = fa;
+			}
+			final double tol = 2*Math.ulp(b)+1e-12;
+			final double m = (c-b)/2;
+			if(Math.abs(fb) < tolerance || Math.abs(m) <= tol) return b;
+			if(Math.abs(e) >= tol && Math.abs(fa) > Math.abs(fb)){
+				// inverse quadratic interpolation, secant if only two points
+				final double s = fb/fa;
+				double p, q;
+				if(a == c){
+					p = 2*m*s;
+					q = 1-s;
+				} else {
+					final double qa = fa/fc, r = fb/fc;
+					p = s*(2*m*qa*(qa-r)-(b-a)*(r-1));
+					q = (qa-1)*(r-1)*(s-1);
+				}
+				if(p > 0) q = -q; else p = -p;
+				if(2*p < Math.min(3*m*q-Math.abs(tol*q), Math.abs(e*q))){
+					e = d;
+					d = p/q;
+				} else {
+					d = m;
+					e = m;
+				}
+			} else {
+				d = m;
+				e = m;
+			}
+			a = b;
+			fa = fb;
+			b += (Math.abs(d) > tol)?d:Math.copySign(tol, m);
+			fb = BlackScholes.price(call, stock, strike, b, maturity, interest)-price;
+		}
+		return b;
+	}
+	
+	/**
+	 * Solves options sharing the interest rate, element by element.
+	 * Consecutive options with the same maturity start from the previous solution, so chains sorted by strike
+	 * converge in fewer iterations.
+	 * @param out implied volatilities, NaN where none exists
+	 */
+	public void solve(boolean[] calls, double[] stocks, double[] strikes, double[] maturities, double interest, double[] prices, double[] out){
+		double previous = Double.NaN;
+		for(int i = 0; i < out.length; i++){
+			final double guess = (i > 0 && maturities[i] == maturities[i-1])?previous:Double.NaN;
+			out[i] = solve(calls[i], stocks[i], strikes[i], maturities[i], interest, prices[i], guess);
+			if(!Double.isNaN(out[i])) previous = out[i];
+		}
+	}
+	
+	/**
+	 * Solves the options of a chain on the same underlying price
+	 * @param options e.g. the options of an {@link org.dynami.core.assets.OptionChain}, sorted by strike
+	 * @param prices market prices of the options
+	 * @param spot underlying price
+	 * @param time
+	 * @param interest
+	 * @param out implied volatilities, NaN where none exists
+	 */
+	public void solve(Asset.Option[] options, double[] prices, double spot, long time, double interest, double[] out){
+		final int n = options.length;
+		final boolean[] calls = new boolean[n];
+		final double[] stocks = new double[n], strikes = new double[n], maturities = new double[n];
+		for(int i = 0; i < n; i++){
+			calls[i] = Asset.Option.Type.CALL.equals(options[i].type);
+			stocks[i] = spot;
+			strikes[i] = options[i].strike;
+			maturities[i] = ((options[i].expire-time)/(double)DUtils.DAY_MILLIS)/DUtils.YEAR_DAYS;
+		}
+		solve(calls, stocks, strikes, maturities, interest, prices, out);
+	}
+}
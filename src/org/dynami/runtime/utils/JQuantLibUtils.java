@@ -15,14 +15,19 @@
  */
 package org.dynami.runtime.utils;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.dynami.core.assets.Asset;
 import org.dynami.core.assets.Asset.Tradable;
 import org.dynami.core.assets.Asset.Option.Type;
 import org.dynami.core.assets.Greeks;
 import org.dynami.core.data.IPricingEngine;
+import org.dynami.core.services.ITraceService;
 import org.dynami.core.utils.DTime;
 import org.dynami.core.utils.DUtils;
 import org.dynami.runtime.impl.Execution;
+import org.dynami.runtime.topics.Topics;
 import org.jquantlib.daycounters.Actual365Fixed;
 import org.jquantlib.daycounters.DayCounter;
 import org.jquantlib.exercise.EuropeanExercise;
@@ -123,39 +128,143 @@ public class JQuantLibUtils {
 		}
 	};
 
+	/**
+	 * Greeks engine for European options.
+	 * <br>{@link Mode#ClosedForm}, the default, evaluates price and greeks in one pass with {@link BlackScholes}.
+	 * {@link Mode#JQuantLib} goes through the JQuantLib analytic engine, sharing term structures and pricing engine
+	 * among options with the same expiry, rebuilt only when the evaluation date changes.
+	 * {@link Mode#Validate} returns closed form values and traces a warning for those JQuantLib disagrees with.
+	 * <br>The JQuantLib evaluation date is global, so every JQuantLib evaluation, the date switch included, runs under one lock.
+	 * <br>Theta is per day, as JQuantLib thetaPerDay.
+	 */
 	public static final class GreeksEngine implements Greeks.Engine {
-		private Date settlement = null;
-		private OptionGreeks optionGreeks = null;
-		private final Handle<Quote> volaH = new Handle<Quote>(new SimpleQuote());
-		private final Handle<Quote> dividendYeldH = new Handle<Quote>(new SimpleQuote(0.0));
-		private final Handle<Quote> interestRateH = new Handle<Quote>(new SimpleQuote(0.0));
-		private final Handle<Quote> lastH = new Handle<Quote>(new SimpleQuote());
+		public static enum Mode {ClosedForm, JQuantLib, Validate}
+		private static final double TOLERANCE = 1e-4;
+		private static final Object LOCK = new Object();
+		// guarded by LOCK, as the JQuantLib evaluation date
+		private static final Map<String, Context> contexts = new HashMap<>();
+		private static long evaluationDay = Long.MIN_VALUE;
+		private final Mode mode;
+		private final BlackScholes.Result result = new BlackScholes.Result();
+		private Asset.Tradable underlying;
+		private Context context;
+		private VanillaOption option;
+
+		public GreeksEngine() {
+			this(Mode.ClosedForm);
+		}
+
+		public GreeksEngine(Mode mode) {
+			this.mode = mode;
+		}
 
 		@Override
 		public void evaluate(Greeks output, String underlyingSymbol, long time, Type type, long expire, double strike, double vola, double interestRate) {
-			if(optionGreeks == null){
-				settlement = new Date(new java.util.Date(DTime.Clock.getTime()));
-				Date expirationDate = new Date(new java.util.Date(expire));
-				expirationDate.addAssign(1);
-				optionGreeks = new OptionGreeks(settlement, expirationDate, type, strike, lastH, interestRateH, dividendYeldH, volaH);
+			if(!(vola > 0)) return;
+			final long currentTime = DTime.Clock.getTime();
+			final double underlyingPrice = underlying(underlyingSymbol).lastPrice();
+
+			if(mode == Mode.JQuantLib){
+				synchronized (LOCK) {
+					jquantlib(currentTime, type, expire, strike, underlyingPrice, vola, interestRate, result);
+					output.setGreeks(result.delta, result.gamma, result.vega, result.theta, result.rho, result.price);
+				}
+				return;
+			}
+
+			// same day count as JQuantLib: Actual365Fixed, from the evaluation date to the day after expiration
+			final long days = expire/DUtils.DAY_MILLIS + 1 - currentTime/DUtils.DAY_MILLIS;
+			final BlackScholes.Result r = BlackScholes.evaluate(Asset.Option.Type.CALL.equals(type), underlyingPrice, strike, vola, days/365., interestRate, new BlackScholes.Result());
+			r.theta /= 365;
+			output.setGreeks(r.delta, r.gamma, r.vega, r.theta, r.rho, r.price);
+
+			if(mode == Mode.Validate){
+				final String mismatch;
+				synchronized (LOCK) {
+					jquantlib(currentTime, type, expire, strike, underlyingPrice, vola, interestRate, result);
+					mismatch = (differs(r.price, result.price) || differs(r.delta, result.delta) || differs(r.gamma, result.gamma)
+							|| differs(r.vega, result.vega) || differs(r.theta, result.theta) || differs(r.rho, result.rho))?
+							underlyingSymbol+" "+type+" "+strike+" closed form "+r+" JQuantLib "+result:null;
+				}
+				if(mismatch != null){
+					Execution.Manager.msg().async(Topics.TRACE.topic, new ITraceService.Trace(ITraceService.Trace.Type.Warn, currentTime, "GreeksEngine", mismatch));
+				}
+			}
+		}
+
+		private Asset.Tradable underlying(String symbol){
+			final Asset.Tradable u = underlying;
+			if(u != null && u.symbol.equals(symbol)) return u;
+			return underlying = Execution.Manager.dynami().assets().getBySymbol(symbol).asTradable();
+		}
+
+		/**
+		 * Must be called holding LOCK
+		 */
+		private void jquantlib(long currentTime, Type type, long expire, double strike, double underlyingPrice, double vola, double interestRate, BlackScholes.Result out){
+			final long day = currentTime/DUtils.DAY_MILLIS;
+			final Context ctx = Context.of(day, currentTime, expire);
+			if(ctx != context){
+				context = ctx;
+				final PlainVanillaPayoff payoff = new PlainVanillaPayoff(type.equals(Asset.Option.Type.CALL)?org.jquantlib.instruments.Option.Type.Call:org.jquantlib.instruments.Option.Type.Put, strike);
+				option = new VanillaOption(payoff, new EuropeanExercise(ctx.expiration));
+				option.setPricingEngine(ctx.engine);
+			}
+			if(evaluationDay != day){
+				new org.jquantlib.Settings().setEvaluationDate(ctx.settlement);
+				evaluationDay = day;
 			}
+			ctx.vola.setValue(vola);
+			ctx.interestRate.setValue(interestRate);
+			ctx.last.setValue(underlyingPrice);
+			out.price = option.NPV();
+			out.delta = option.delta();
+			out.gamma = option.gamma();
+			out.vega = option.vega();
+			out.theta = option.thetaPerDay();
+			out.rho = option.rho();
+		}
+
+		private static boolean differs(double a, double b){
+			return Math.abs(a-b) > TOLERANCE*Math.max(1, Math.max(Math.abs(a), Math.abs(b)));
+		}
 
-			long currentSettlement = settlement.isoDate().getTime();
-			long currentTime = DTime.Clock.getTime();
-			int daysLeft = (int)((currentTime-currentSettlement)/DUtils.DAY_MILLIS);
-			if(daysLeft > 0){
-				settlement.addAssign(daysLeft);
+		/**
+		 * Term structures and pricing engine shared by the options with the same expiry on the same evaluation date
+		 */
+		private static final class Context {
+			private final Date settlement;
+			private final Date expiration;
+			private final SimpleQuote vola = new SimpleQuote(0.0);
+			private final SimpleQuote interestRate = new SimpleQuote(0.0);
+			private final SimpleQuote last = new SimpleQuote(0.0);
+			private final PricingEngine engine;
+
+			private Context(long time, long expire) {
+				settlement = new Date(new java.util.Date(time));
+				expiration = new Date(new java.util.Date(expire));
+				expiration.addAssign(1);
+				final org.jquantlib.time.Calendar calendar = new Target();
+				final DayCounter dayCounter = new Actual365Fixed();
+				final Handle<YieldTermStructure> flatDividendTS = new Handle<YieldTermStructure>(new FlatForward(settlement, new Handle<Quote>(new SimpleQuote(0.0)), dayCounter));
+				final Handle<YieldTermStructure> flatTermStructure = new Handle<YieldTermStructure>(new FlatForward(settlement, new Handle<Quote>(interestRate), dayCounter));
+				final Handle<BlackVolTermStructure> flatVolTS = new Handle<BlackVolTermStructure>(new BlackConstantVol(settlement, calendar, new Handle<Quote>(vola), dayCounter));
+				engine = new AnalyticEuropeanEngine(new BlackScholesMertonProcess(new Handle<Quote>(last), flatDividendTS, flatTermStructure, flatVolTS));
 			}
-			new org.jquantlib.Settings().setEvaluationDate(settlement);
-			if(vola > 0){
-				double underlyingPrice = Execution.Manager.dynami().assets().getBySymbol(underlyingSymbol).asTradable().lastPrice();
-				
-//				System.out.println("JQuantLibUtils.GreeksEngine.evaluate()underlyingPrice: "+underlyingPrice);
-				((SimpleQuote)volaH.currentLink()).setValue(vola);
-				((SimpleQuote)interestRateH.currentLink()).setValue(interestRate);
-				((SimpleQuote)lastH.currentLink()).setValue(underlyingPrice);
-
-				output.setGreeks(optionGreeks.delta(), optionGreeks.gamma(), optionGreeks.vega(), optionGreeks.theta(), optionGreeks.rho(), optionGreeks.theoreticalPrice());
+
+			/**
+			 * Must be called holding LOCK
+			 */
+			private static Context of(long day, long time, long expire){
+				final String key = day+"@"+expire;
+				Context ctx = contexts.get(key);
+				if(ctx == null){
+					// a new evaluation date makes contexts of previous days useless
+					if(day != evaluationDay) contexts.clear();
+					ctx = new Context(time, expire);
+					contexts.put(key, ctx);
+				}
+				return ctx;
 			}
 		}
 	}
@@ -0,0 +1,161 @@
+package org.dynami.runtime.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+
+import org.dynami.core.assets.Asset;
+import org.dynami.core.utils.DUtils;
+
+/**
+ * Prices bid and ask of a whole option chain with Black &amp; Scholes, grouping options by expiry.
+ * <br>Volatility and maturity are computed once per expiry and step,
+ * then strikes are priced with {@link BlackScholes#price(boolean, double, double, double, double, double)}
+ * in a loop over primitive arrays. Expiries can be priced in parallel.
+ * <br>Bid and ask are priced on the spot shifted by half the spread for every strike away from the money.
+ * @author Atria
+ */
+public class OptionChainPricer {
+	private final String[] symbols;
+	private final double[] strikes;
+	private final boolean[] calls;
+	private final double[] bids, asks;
+	private final boolean[] priced;
+	private final Expiry[] expiries;
+	private boolean parallel = false;
+	
+	/**
+	 * @param options the chain, results keep the same order
+	 */
+	public OptionChainPricer(List<Asset.Option> options) {
+		final int n = options.size();
+		symbols = new String[n];
+		strikes = new double[n];
+		calls = new boolean[n];
+		bids = new double[n];
+		asks = new double[n];
+		priced = new boolean[n];
+		final Map<Long, List<Integer>> byExpiry = new LinkedHashMap<>();
+		final Map<Long, Asset.Option> first = new LinkedHashMap<>();
+		for(int i = 0; i < n; i++){
+			final Asset.Option o = options.get(i);
+			symbols[i] = o.symbol;
+			strikes[i] = o.strike;
+			calls[i] = Asset.Option.Type.CALL.equals(o.type);
+			byExpiry.computeIfAbsent(o.expire, e->new ArrayList<>()).add(i);
+			first.putIfAbsent(o.expire, o);
+		}
+		expiries = new Expiry[byExpiry.size()];
+		int e = 0;
+		for(Map.Entry<Long, List<Integer>> entry : byExpiry.entrySet()){
+			expiries[e++] = new Expiry(first.get(entry.getKey()), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+		}
+	}
+	
+	/**
+	 * @param parallel true to price expiries concurrently on the common fork join pool
+	 */
+	public OptionChainPricer parallel(boolean parallel){
+		this.parallel = parallel;
+		return this;
+	}
+	
+	/**
+	 * Prices all options not yet expired
+	 * @param time
+	 * @param spot underlying price
+	 * @param optionStep points between two strikes
+	 * @param bidAskSpread spread at the money, widening by one spread every strike step
+	 * @param riskfreeRate
+	 * @param volatility annualized volatility given the days left to expiration, computed once per expiry
+	 * @return number of priced options
+	 */
+	public int price(final long time, final double spot, final double optionStep, final double bidAskSpread,
+			final double riskfreeRate, final IntToDoubleFunction volatility){
+		int active = 0;
+		for(Expiry e : expiries){
+			if(!e.expired && e.option.isExpired(time)){
+				e.expired = true;
+			}
+			if(e.expired){
+				for(int i : e.members) priced[i] = false;
+				e.vola = 0;
+				continue;
+			}
+			e.daysLeft = e.option.daysToExpiration(time);
+			e.vola = volatility.applyAsDouble(e.daysLeft);
+			active++;
+		}
+		if(parallel && active > 1){
+			IntStream.range(0, expiries.length).parallel().forEach(e->price(expiries[e], spot, optionStep, bidAskSpread, riskfreeRate));
+		} else {
+			for(Expiry e : expiries){
+				price(e, spot, optionStep, bidAskSpread, riskfreeRate);
+			}
+		}
+		int count = 0;
+		for(boolean p : priced){
+			if(p) count++;
+		}
+		return count;
+	}
+	
+	private void price(final Expiry e, final double spot, final double optionStep, final double bidAskSpread, final double riskfreeRate){
+		if(e.expired) return;
+		final double vola = e.vola;
+		final int[] members = e.members;
+		if(!(vola > 0)){
+			for(int i : members) priced[i] = false;
+			return;
+		}
+		final double maturity = (double)e.daysLeft/DUtils.YEAR_DAYS;
+		final double halfSpread = bidAskSpread/2;
+		for(int m = 0; m < members.length; m++){
+			final int i = members[m];
+			final double strike = strikes[i];
+			final int strikesFromAtm = 1+(int)(Math.abs(spot - strike) / optionStep);
+			bids[i] = BlackScholes.price(calls[i], spot - halfSpread*strikesFromAtm, strike, vola, maturity, riskfreeRate);
+			asks[i] = BlackScholes.price(calls[i], spot + halfSpread*strikesFromAtm, strike, vola, maturity, riskfreeRate);
+			priced[i] = true;
+		}
+	}
+	
+	public int size(){
+		return symbols.length;
+	}
+	
+	public String symbol(int idx){
+		return symbols[idx];
+	}
+	
+	/**
+	 * @return true if the option was priced by the last call, false if expired or without volatility
+	 */
+	public boolean isPriced(int idx){
+		return priced[idx];
+	}
+	
+	public double bid(int idx){
+		return bids[idx];
+	}
+	
+	public double ask(int idx){
+		return asks[idx];
+	}
+	
+	private static class Expiry {
+		private final Asset.Option option;
+		private final int[] members;
+		private boolean expired = false;
+		private int daysLeft;
+		private double vola;
+		
+		private Expiry(Asset.Option option, int[] members) {
+			this.option = option;
+			this.members = members;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package org.dynami.runtime.data;
+
+import java.util.Random;
+
+import org.dynami.core.data.Bar;
+import org.dynami.core.data.IVolatilityEngine;
+import org.dynami.core.data.vola.ParkinsonVolatilityEngine;
+import org.dynami.core.data.vola.RogersSatchellVolatilityEngine;
+
+/**
+ * Compares rolling volatilities and cached engine volatilities with the core engines computing on the same bars.
+ * DataService.histVola and the simulated option chain use the engines through BarData.cachedVolatility,
+ * rolling volatilities are only served to callers asking for them.
+ */
+public class RollingVolatilityTest {
+	private static final double TOLERANCE = 1e-9;
+
+	public static void main(String[] args) {
+		final BarData bars = new BarData();
+		final RollingVolatility[] parkinson = {bars.rollingVolatility(RollingVolatility.Estimator.Parkinson, 5), bars.rollingVolatility(RollingVolatility.Estimator.Parkinson, 20)};
+		final RollingVolatility[] rogersSatchell = {bars.rollingVolatility(RollingVolatility.Estimator.RogersSatchell, 5), bars.rollingVolatility(RollingVolatility.Estimator.RogersSatchell, 20)};
+		final IVolatilityEngine parkinsonEngine = new ParkinsonVolatilityEngine();
+		final IVolatilityEngine rogersSatchellEngine = new RogersSatchellVolatilityEngine();
+		final Random random = new Random(17);
+		double price = 20000;
+		int failures = 0;
+		for(int i = 0; i < 2000; i++){
+			final double open = price;
+			final double close = open*Math.exp(random.nextGaussian()*.01);
+			final double high = Math.max(open, close)*(1+random.nextDouble()*.005);
+			final double low = Math.min(open, close)*(1-random.nextDouble()*.005);
+			bars.append(new Bar("FTSEMIB", open, high, low, close, 0, 86_400_000L*(i+1)));
+			price = close;
+			if(bars.size() < 20) continue;
+			for(RollingVolatility v : parkinson){
+				failures += compare("Parkinson", i, v.value(), parkinsonEngine.compute(bars, v.window()));
+			}
+			for(RollingVolatility v : rogersSatchell){
+				failures += compare("RogersSatchell", i, v.value(), rogersSatchellEngine.compute(bars, v.window()));
+			}
+			for(int window : new int[]{5, 20}){
+				// the second call on the same bar is served from the cache
+				failures += compare("Cached Parkinson", i, bars.cachedVolatility(parkinsonEngine, window), parkinsonEngine.compute(bars, window));
+				failures += compare("Cached Parkinson", i, bars.cachedVolatility(parkinsonEngine, window), parkinsonEngine.compute(bars, window));
+				failures += compare("Cached RogersSatchell", i, bars.cachedVolatility(rogersSatchellEngine, window), rogersSatchellEngine.compute(bars, window));
+			}
+		}
+		System.out.println(failures == 0 ? "RollingVolatilityTest OK" : "RollingVolatilityTest "+failures+" failures");
+	}
+
+	private static int compare(String name, int bar, double rolling, double engine){
+		if(Math.abs(rolling-engine) <= TOLERANCE*Math.max(1, Math.abs(engine))) return 0;
+		if(bar % 500 == 0) System.out.println("RollingVolatilityTest "+name+" bar "+bar+" rolling "+rolling+" engine "+engine);
+		return 1;
+	}
+}
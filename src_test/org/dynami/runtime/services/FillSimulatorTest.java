@@ -0,0 +1,235 @@
+package org.dynami.runtime.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.dynami.core.assets.Book;
+import org.dynami.core.orders.OrderRequest;
+import org.dynami.core.portfolio.ExecutedOrder;
+import org.dynami.core.services.IOrderService;
+import org.dynami.core.utils.DTime;
+
+public class FillSimulatorTest {
+	private static final IOrderService.IOrderHandler HANDLER = new IOrderService.IOrderHandler() {};
+	private static final List<ExecutedOrder> fills = new ArrayList<>();
+	private static final List<Long> cancels = new ArrayList<>();
+	private static final List<Long> released = new ArrayList<>();
+	private static final List<Long> triggered = new ArrayList<>();
+	private static final Map<String, Book.Orders> best = new HashMap<>();
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		immediate();
+		latency();
+		partialFills();
+		queuePosition();
+		slippage();
+		stopTrigger();
+		oco();
+		bracket();
+		bracketCancel();
+		cancelTooLate();
+		System.out.println(failures == 0 ? "FillSimulatorTest OK" : "FillSimulatorTest "+failures+" failures");
+	}
+
+	private static void immediate(){
+		final FillSimulator s = simulator(FillModel.IMMEDIATE);
+		DTime.Clock.update(1000);
+		s.submit(order(1, 5, 100), FillSimulator.Type.Limit);
+		s.onQuote(ask(101, 1), true);
+		check("immediate no cross", fills.size() == 0);
+		s.onQuote(ask(100, 1), true);
+		check("immediate full fill", fills.size() == 1 && fills.get(0).quantity == 5 && fills.get(0).price == 100);
+	}
+
+	private static void latency(){
+		final FillSimulator s = simulator(new SimulatedFillModel(10, 5, false, false, 0, 0));
+		DTime.Clock.update(1000);
+		s.submit(order(1, 1, 100), FillSimulator.Type.Limit);
+		DTime.Clock.update(1005);
+		s.onQuote(ask(99, 1), true);
+		check("latency not yet on market", fills.size() == 0);
+		DTime.Clock.update(1010);
+		s.onQuote(ask(99, 1), true);
+		check("latency report not yet due", fills.size() == 0);
+		DTime.Clock.update(1015);
+		s.onQuote(ask(120, 1), true);
+		check("latency reported", fills.size() == 1 && fills.get(0).time == 1010);
+	}
+
+	private static void partialFills(){
+		final FillSimulator s = simulator(new SimulatedFillModel(0, 0, true, false, 0, 0));
+		DTime.Clock.update(1000);
+		s.submit(order(1, 5, 100), FillSimulator.Type.Limit);
+		s.submit(order(2, 5, 100), FillSimulator.Type.Limit);
+		s.onQuote(ask(100, 7), true);
+		check("partial quote shared", fills.size() == 2 && fills.get(0).quantity == 5 && fills.get(1).quantity == 2);
+		s.onQuote(ask(100, 7), true);
+		check("partial rest filled", fills.size() == 3 && fills.get(2).id == 2 && fills.get(2).quantity == 3);
+	}
+
+	private static void queuePosition(){
+		final FillSimulator s = simulator(new SimulatedFillModel(0, 0, true, true, 0, 0));
+		DTime.Clock.update(1000);
+		best.put("X/bid", bid(100, 100));
+		s.submit(order(1, 80, 100), FillSimulator.Type.Limit);
+		s.onQuote(ask(100, 60), true);
+		check("queue ahead first", fills.size() == 0);
+		s.onQuote(ask(100, 90), true);
+		check("queue rest of quote only", fills.size() == 1 && fills.get(0).quantity == 50);
+		s.onQuote(ask(99, 100), true);
+		check("queue through price", fills.size() == 2 && fills.get(1).quantity == 30);
+	}
+
+	private static void slippage(){
+		final FillSimulator s = simulator(new SimulatedFillModel(0, 0, false, false, .01, .02));
+		DTime.Clock.update(1000);
+		s.submit(order(1, 4, 100), FillSimulator.Type.Limit);
+		s.submit(order(2, -4, 100), FillSimulator.Type.Limit);
+		s.onQuote(ask(100, 16), true);
+		s.onQuote(bid(100, 16), false);
+		check("slippage buy", fills.size() == 2 && Math.abs(fills.get(0).price-102) < 1e-9);
+		check("slippage sell", fills.size() == 2 && Math.abs(fills.get(1).price-98) < 1e-9);
+	}
+
+	private static void stopTrigger(){
+		final FillSimulator s = simulator(FillModel.IMMEDIATE);
+		DTime.Clock.update(1000);
+		s.submit(order(1, -2, 95), FillSimulator.Type.Stop);
+		s.submit(order(2, 3, 105), FillSimulator.Type.Stop);
+		s.onQuote(bid(96, 5), false);
+		s.onQuote(ask(94, 5), true);
+		check("stop not touched", fills.isEmpty() && triggered.isEmpty());
+		s.onQuote(bid(95, 5), false);
+		check("sell stop triggered by bid", triggered.equals(Arrays.asList(1L))
+				&& fills.size() == 1 && fills.get(0).id == 1 && fills.get(0).quantity == -2 && fills.get(0).price == 95);
+		s.onQuote(bid(110, 5), false);
+		check("buy stop ignores bid", triggered.size() == 1 && fills.size() == 1);
+		s.onQuote(ask(106, 5), true);
+		check("buy stop triggered by ask", triggered.equals(Arrays.asList(1L, 2L))
+				&& fills.size() == 2 && fills.get(1).id == 2 && fills.get(1).quantity == 3 && fills.get(1).price == 106);
+		check("stop cancelled", !s.cancel(order(1, -2, 95)));
+	}
+
+	private static void oco(){
+		FillSimulator s = simulator(FillModel.IMMEDIATE);
+		DTime.Clock.update(1000);
+		// both orders rest on the same side and are crossed by the same quote, the best priced one fills first
+		s.submit(Arrays.asList(order(1, 1, 99), order(2, 1, 100)), Arrays.asList(FillSimulator.Type.Limit, FillSimulator.Type.Limit), true);
+		s.onQuote(ask(98, 10), true);
+		check("oco same side single fill", fills.size() == 1 && fills.get(0).id == 2);
+		check("oco same side sibling cancelled", cancels.equals(Arrays.asList(1L)));
+		s.onQuote(ask(98, 10), true);
+		check("oco sibling withdrawn", fills.size() == 1 && !s.cancel(order(1, 1, 99)));
+
+		s = simulator(FillModel.IMMEDIATE);
+		s.submit(Arrays.asList(order(1, 1, 90), order(2, -1, 110)), Arrays.asList(FillSimulator.Type.Limit, FillSimulator.Type.Limit), true);
+		s.onQuote(bid(111, 10), false);
+		check("oco opposite sides", fills.size() == 1 && fills.get(0).id == 2 && cancels.equals(Arrays.asList(1L)));
+		s.onQuote(ask(80, 10), true);
+		check("oco opposite sibling withdrawn", fills.size() == 1);
+	}
+
+	private static void bracket(){
+		FillSimulator s = simulator(FillModel.IMMEDIATE);
+		DTime.Clock.update(1000);
+		s.bracket(order(1, 2, 100), FillSimulator.Type.Limit, order(2, -2, 110), order(3, -2, 95));
+		s.onQuote(bid(111, 10), false);
+		s.onQuote(bid(90, 10), false);
+		check("bracket legs held", fills.isEmpty() && released.isEmpty() && triggered.isEmpty());
+		s.onQuote(ask(100, 10), true);
+		check("bracket entry filled", fills.size() == 1 && fills.get(0).id == 1);
+		check("bracket legs released", released.equals(Arrays.asList(2L, 3L)));
+		s.onQuote(bid(110, 10), false);
+		check("bracket target filled", fills.size() == 2 && fills.get(1).id == 2 && fills.get(1).price == 110);
+		check("bracket stop cancelled", cancels.equals(Arrays.asList(3L)) && triggered.isEmpty());
+		s.onQuote(bid(90, 10), false);
+		check("bracket stop withdrawn", fills.size() == 2 && triggered.isEmpty());
+
+		s = simulator(FillModel.IMMEDIATE);
+		s.bracket(order(1, 2, 100), FillSimulator.Type.Market, order(2, -2, 110), order(3, -2, 95));
+		s.onQuote(ask(100, 10), true);
+		check("bracket market entry", fills.size() == 1 && released.equals(Arrays.asList(2L, 3L)));
+		s.onQuote(bid(94, 10), false);
+		check("bracket stop triggered", triggered.equals(Arrays.asList(3L))
+				&& fills.size() == 2 && fills.get(1).id == 3 && fills.get(1).price == 94);
+		check("bracket target cancelled", cancels.equals(Arrays.asList(2L)));
+	}
+
+	private static void bracketCancel(){
+		final FillSimulator s = simulator(FillModel.IMMEDIATE);
+		DTime.Clock.update(1000);
+		s.bracket(order(1, 2, 100), FillSimulator.Type.Limit, order(2, -2, 110), order(3, -2, 95));
+		check("bracket entry cancelled", s.cancel(order(1, 2, 100)));
+		// unreleased legs are dropped silently, the listener never heard of them
+		check("bracket legs dropped", cancels.isEmpty() && !s.cancel(order(2, -2, 110)) && !s.cancel(order(3, -2, 95)));
+		s.onQuote(ask(100, 10), true);
+		s.onQuote(bid(111, 10), false);
+		s.onQuote(bid(90, 10), false);
+		check("bracket cancelled no fills", fills.isEmpty() && released.isEmpty() && triggered.isEmpty());
+	}
+
+	private static void cancelTooLate(){
+		final FillSimulator s = simulator(new SimulatedFillModel(0, 5, false, false, 0, 0));
+		DTime.Clock.update(1000);
+		s.submit(order(1, 1, 100), FillSimulator.Type.Limit);
+		s.onQuote(ask(100, 1), true);
+		check("cancel after fill rejected", fills.isEmpty() && !s.cancel(order(1, 1, 100)));
+		DTime.Clock.update(1005);
+		s.onQuote(ask(120, 1), true);
+		check("late fill reported", fills.size() == 1 && fills.get(0).id == 1 && cancels.isEmpty());
+	}
+
+	private static FillSimulator simulator(FillModel model){
+		fills.clear();
+		cancels.clear();
+		released.clear();
+		triggered.clear();
+		best.clear();
+		final FillSimulator s = new FillSimulator(new FillSimulator.Listener() {
+			@Override
+			public void onFill(OrderRequest order, ExecutedOrder fill, boolean last) {
+				fills.add(fill);
+			}
+
+			@Override
+			public void onCancel(OrderRequest order) {
+				cancels.add(order.id);
+			}
+
+			@Override
+			public void onRelease(OrderRequest order, FillSimulator.Type type) {
+				released.add(order.id);
+			}
+
+			@Override
+			public void onTrigger(OrderRequest order) {
+				triggered.add(order.id);
+			}
+		}, (symbol, ask)->best.get(symbol+(ask?"/ask":"/bid")));
+		s.model(model);
+		return s;
+	}
+
+	private static OrderRequest order(long id, long quantity, double price){
+		return new OrderRequest(id, DTime.Clock.getTime(), "X", quantity, price, "", HANDLER);
+	}
+
+	private static Book.Orders ask(double price, long quantity){
+		return new Book.Orders("X", DTime.Clock.getTime(), Book.Side.ASK, 1, price, quantity);
+	}
+
+	private static Book.Orders bid(double price, long quantity){
+		return new Book.Orders("X", DTime.Clock.getTime(), Book.Side.BID, 1, price, quantity);
+	}
+
+	private static void check(String name, boolean condition){
+		if(!condition){
+			failures++;
+			System.out.println("FAILED "+name+" "+fills);
+		}
+	}
+}
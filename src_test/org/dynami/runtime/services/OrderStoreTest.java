@@ -0,0 +1,117 @@
+package org.dynami.runtime.services;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.dynami.core.orders.OrderRequest;
+import org.dynami.core.services.IOrderService;
+import org.dynami.core.services.IOrderService.Status;
+
+public class OrderStoreTest {
+	private static final IOrderService.IOrderHandler HANDLER = new IOrderService.IOrderHandler() {};
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		longMapRandom();
+		longMapClusters();
+		transitions();
+		System.out.println(failures == 0 ? "OrderStoreTest OK" : "OrderStoreTest "+failures+" failures");
+	}
+
+	/**
+	 * Random put/remove against a HashMap, growing through several rehashes and shrinking back
+	 */
+	private static void longMapRandom(){
+		final OrderStore.LongMap<Long> map = new OrderStore.LongMap<>();
+		final Map<Long, Long> expected = new HashMap<>();
+		final Random random = new Random(7);
+		boolean ok = true;
+		for(int i = 0; i < 200_000 && ok; i++){
+			// narrow key range while growing so that puts overwrite and removes hit, negative keys included
+			final long key = random.nextInt(i < 100_000 ? 50_000 : 5_000) - 1_000;
+			if(random.nextInt(3) == 0){
+				ok = equals(expected.remove(key), map.remove(key));
+			} else {
+				ok = equals(expected.put(key, (long)i), map.put(key, (long)i));
+			}
+			ok &= expected.size() == map.size();
+		}
+		for(long key = -1_000; key < 49_000 && ok; key++){
+			ok = equals(expected.get(key), map.get(key));
+		}
+		check("longmap random against HashMap", ok);
+		check("longmap reserved key", map.get(Long.MIN_VALUE) == null && map.remove(Long.MIN_VALUE) == null);
+	}
+
+	/**
+	 * Sequential ids, as the order service produces them, removed from the middle of the clusters
+	 */
+	private static void longMapClusters(){
+		final OrderStore.LongMap<Long> map = new OrderStore.LongMap<>();
+		final int n = 1 << 14;
+		for(long key = 0; key < n; key++) map.put(key, key);
+		boolean ok = map.size() == n;
+		// removes every other key, then every fourth of the remaining ones
+		for(long key = 0; key < n; key += 2) ok &= map.remove(key) == key;
+		for(long key = 1; key < n; key += 4) ok &= map.remove(key) == key;
+		for(long key = 0; key < n; key++){
+			ok &= equals(key % 4 == 3 ? Long.valueOf(key) : null, map.get(key));
+		}
+		ok &= map.size() == n/4;
+		check("longmap clustered removals", ok);
+		for(long key = 0; key < n; key += 4) map.put(key, -key);
+		ok = map.size() == n/2;
+		for(long key = 0; key < n; key++){
+			ok &= equals(key % 4 == 0 ? Long.valueOf(-key) : key % 4 == 3 ? Long.valueOf(key) : null, map.get(key));
+		}
+		check("longmap reinsert after removals", ok);
+		map.clear();
+		check("longmap clear", map.size() == 0 && map.get(3) == null);
+	}
+
+	private static void transitions(){
+		final OrderStore store = new OrderStore();
+		final OrderRequest a = order(1, "A"), b = order(2, "A"), c = order(3, "B");
+		store.add(a);
+		store.add(b);
+		store.add(c);
+		check("pending indexed", store.get(Status.Pending).size() == 3 && store.hasPending("A") && store.hasPending("B"));
+		check("live instance", store.get(1) == a);
+
+		check("execute pending", store.execute(a, 1000));
+		check("execute twice", !store.execute(a, 1001));
+		check("executed archived", store.size() == 2 && store.archived() == 1
+				&& store.get(Status.Executed).size() == 1 && store.get(Status.Pending).size() == 2);
+		final OrderRequest archived = store.get(1);
+		check("executed by id", archived != null && archived.id == 1 && Status.Executed.equals(archived.getStatus()));
+		check("executed not cancelled", store.cancel(1) == null && Status.Executed.equals(store.get(1).getStatus()));
+
+		check("cancel pending", store.cancel(3) == c && Status.Cancelled.equals(c.getStatus()));
+		check("symbol unindexed", store.hasPending("A") && !store.hasPending("B"));
+		check("cancel twice", store.cancel(3) == null && store.get(Status.Cancelled).size() == 1);
+		check("cancel unknown", store.cancel(42) == null);
+
+		check("execute last pending", store.execute(b, 1002));
+		check("no pending left", !store.hasPending() && !store.hasPending("A") && store.get(Status.Pending).isEmpty());
+		check("all archived", store.size() == 0 && store.archived() == 3 && store.get(Status.Executed).size() == 2);
+
+		store.clear();
+		check("clear", store.size() == 0 && store.archived() == 0 && store.get(1) == null);
+	}
+
+	private static OrderRequest order(long id, String symbol){
+		return new OrderRequest(id, 0, symbol, 1, 100, "", HANDLER);
+	}
+
+	private static boolean equals(Long a, Long b){
+		return a == null ? b == null : a.equals(b);
+	}
+
+	private static void check(String name, boolean condition){
+		if(!condition){
+			failures++;
+			System.out.println("FAILED "+name);
+		}
+	}
+}
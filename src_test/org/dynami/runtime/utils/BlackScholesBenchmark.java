@@ -0,0 +1,153 @@
+package org.dynami.runtime.utils;
+
+import java.util.Random;
+
+/**
+ * Accuracy and throughput of the shared Black &amp; Scholes kernel against the previous implementation,
+ * kept here as baseline: CDF with Math.pow and one d1/d2 evaluation per greek.
+ */
+public class BlackScholesBenchmark {
+	private static final int N = 200_000;
+	private static final int ROUNDS = 10;
+	private static volatile double sink;
+
+	public static void main(String[] args) {
+		accuracy();
+		throughput();
+	}
+
+	private static void accuracy(){
+		double legacy = 0, horner = 0;
+		for(double x = -8; x <= 8; x += 0.0005){
+			final double exact = referenceCDF(x);
+			legacy = Math.max(legacy, Math.abs(legacyCDF(x)-exact));
+			horner = Math.max(horner, Math.abs(BlackScholes.cdf(x)-exact));
+		}
+		System.out.printf("CDF max abs error\tlegacy %.3e\thorner %.3e%n", legacy, horner);
+
+		// greeks against central finite differences of the kernel price
+		final BlackScholes.Result r = new BlackScholes.Result();
+		final double s = 22_000, k = 22_500, v = .18, t = 30/365., i = .01, h = 1e-4;
+		for(boolean call : new boolean[]{true, false}){
+			BlackScholes.evaluate(call, s, k, v, t, i, r);
+			final double delta = (BlackScholes.price(call, s*(1+h), k, v, t, i)-BlackScholes.price(call, s*(1-h), k, v, t, i))/(2*s*h);
+			final double gamma = (BlackScholes.price(call, s*(1+h), k, v, t, i)-2*r.price+BlackScholes.price(call, s*(1-h), k, v, t, i))/(s*h*s*h);
+			final double vega = (BlackScholes.price(call, s, k, v+h, t, i)-BlackScholes.price(call, s, k, v-h, t, i))/(2*h);
+			final double theta = -(BlackScholes.price(call, s, k, v, t+h, i)-BlackScholes.price(call, s, k, v, t-h, i))/(2*h);
+			final double rho = (BlackScholes.price(call, s, k, v, t, i+h)-BlackScholes.price(call, s, k, v, t, i-h))/(2*h);
+			System.out.printf("%s kernel/finite diff\tdelta %.5f/%.5f\tgamma %.7f/%.7f\tvega %.2f/%.2f\ttheta %.2f/%.2f\trho %.2f/%.2f%n",
+					call?"CALL":"PUT ", r.delta, delta, r.gamma, gamma, r.vega, vega, r.theta, theta, r.rho, rho);
+		}
+	}
+
+	private static void throughput(){
+		final Random rnd = new Random(42);
+		final boolean[] calls = new boolean[N];
+		final double[] stocks = new double[N], strikes = new double[N], volas = new double[N], maturities = new double[N];
+		for(int j = 0; j < N; j++){
+			calls[j] = rnd.nextBoolean();
+			stocks[j] = 20_000+rnd.nextDouble()*4_000;
+			strikes[j] = 20_000+rnd.nextInt(9)*500;
+			volas[j] = .1+rnd.nextDouble()*.3;
+			maturities[j] = (1+rnd.nextInt(90))/365.;
+		}
+		final double[] prices = new double[N], deltas = new double[N], gammas = new double[N], vegas = new double[N], thetas = new double[N], rhos = new double[N];
+		final BlackScholes.Result r = new BlackScholes.Result();
+		for(int round = 0; round < ROUNDS; round++){
+			final boolean print = round == ROUNDS-1;
+
+			long start = System.nanoTime();
+			double acc = 0;
+			for(int j = 0; j < N; j++){
+				acc += legacyPrice(calls[j], stocks[j], strikes[j], volas[j], maturities[j], .01);
+			}
+			sink = acc;
+			report(print, "legacy price", start);
+
+			start = System.nanoTime();
+			acc = 0;
+			for(int j = 0; j < N; j++){
+				acc += BlackScholes.price(calls[j], stocks[j], strikes[j], volas[j], maturities[j], .01);
+			}
+			sink = acc;
+			report(print, "kernel price", start);
+
+			start = System.nanoTime();
+			BlackScholes.price(calls, stocks, strikes, volas, maturities, .01, prices);
+			sink = prices[N-1];
+			report(print, "batch price", start);
+
+			start = System.nanoTime();
+			acc = 0;
+			for(int j = 0; j < N; j++){
+				acc += legacyPrice(calls[j], stocks[j], strikes[j], volas[j], maturities[j], .01);
+				acc += legacyDelta(calls[j], stocks[j], strikes[j], volas[j], maturities[j], .01);
+				acc += legacyGreek(stocks[j], strikes[j], volas[j], maturities[j], .01);
+				acc += legacyGreek(stocks[j], strikes[j], volas[j], maturities[j], .01);
+				acc += legacyGreek(stocks[j], strikes[j], volas[j], maturities[j], .01);
+				acc += legacyPrice(calls[j], stocks[j], strikes[j], volas[j], maturities[j], .01);
+			}
+			sink = acc;
+			report(print, "legacy price+greeks", start);
+
+			start = System.nanoTime();
+			acc = 0;
+			for(int j = 0; j < N; j++){
+				acc += BlackScholes.evaluate(calls[j], stocks[j], strikes[j], volas[j], maturities[j], .01, r).price;
+			}
+			sink = acc;
+			report(print, "kernel price+greeks", start);
+
+			start = System.nanoTime();
+			BlackScholes.evaluate(calls, stocks, strikes, volas, maturities, .01, prices, deltas, gammas, vegas, thetas, rhos);
+			sink = deltas[N-1];
+			report(print, "batch price+greeks", start);
+		}
+	}
+
+	private static void report(boolean print, String name, long start){
+		if(print){
+			System.out.printf("%-20s\t%6.1f ns/option%n", name, (System.nanoTime()-start)/(double)N);
+		}
+	}
+
+	/**
+	 * Series expansion, accurate to double precision in the tested range
+	 */
+	private static double referenceCDF(double x){
+		double sum = x, term = x;
+		for(int n = 1; n < 2000 && Math.abs(term) > 1e-300; n++){
+			term *= x*x/(2*n+1);
+			sum += term;
+		}
+		return .5+sum*BlackScholes.pdf(x);
+	}
+
+	private static double legacyCDF(double x){
+		final double a1 = 0.31938153, a2 = -0.356563782, a3 = 1.781477937, a4 = -1.821255978, a5 = 1.330274429;
+		final double l = Math.abs(x);
+		final double k = 1.0 / (1.0 + 0.2316419 * l);
+		double w = 1.0 - 1.0 / Math.sqrt(2 * Math.PI) * Math.exp(-l * l / 2) * (a1 * k + a2 * k * k + a3 * Math.pow(k, 3) + a4 * Math.pow(k, 4) + a5 * Math.pow(k, 5));
+		return (x < 0)?1.0-w:w;
+	}
+
+	private static double legacyPrice(boolean call, double stock, double strike, double volatility, double maturity, double interest){
+		final double d1 = (Math.log(stock/strike)+(interest+volatility*volatility/2)*maturity) / (volatility*Math.sqrt(maturity));
+		final double d2 = d1-volatility*Math.sqrt(maturity);
+		if(call){
+			return stock*legacyCDF(d1) - strike*Math.exp(-interest*maturity)*legacyCDF(d2);
+		} else {
+			return strike*Math.exp(-interest*maturity)*legacyCDF(-d2) - stock*legacyCDF(-d1);
+		}
+	}
+
+	private static double legacyDelta(boolean call, double stock, double strike, double volatility, double maturity, double interest){
+		final double d1 = (Math.log(stock/strike)+(interest+volatility*volatility/2)*maturity) / (volatility*Math.sqrt(maturity));
+		return call?legacyCDF(d1):legacyCDF(d1)-1;
+	}
+
+	private static double legacyGreek(double stock, double strike, double volatility, double maturity, double interest){
+		final double d1 = (Math.log(stock/strike)+(interest+volatility*volatility/2)*maturity) / (volatility*Math.sqrt(maturity));
+		return stock*Math.sqrt(maturity)*legacyCDF(d1);
+	}
+}
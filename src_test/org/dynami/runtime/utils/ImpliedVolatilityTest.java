@@ -0,0 +1,49 @@
+package org.dynami.runtime.utils;
+
+import java.util.Random;
+
+public class ImpliedVolatilityTest {
+	private static final int CASES = 200_000;
+
+	public static void main(String[] args) {
+		final Random random = new Random(42);
+		int skipped = 0, newtonFailures = 0, brentFailures = 0;
+		double newtonWorst = 0, brentWorst = 0;
+		final long start = System.nanoTime();
+		for(int i = 0; i < CASES; i++){
+			final boolean call = random.nextBoolean();
+			final double stock = 100;
+			final double strike = 50+random.nextDouble()*100;
+			final double vola = .05+random.nextDouble()*1.45;
+			final double maturity = (1+random.nextInt(3*365))/365.;
+			final double interest = random.nextDouble()*.05;
+			final double price = BlackScholes.price(call, stock, strike, vola, maturity, interest);
+			final BlackScholes.Result r = BlackScholes.evaluate(call, stock, strike, vola, maturity, interest, new BlackScholes.Result());
+			// deep in or out of the money the price doesn't identify the volatility within the price tolerance
+			if(r.vega < 1e-2){
+				skipped++;
+				continue;
+			}
+			final double newton = ImpliedVolatility.DEFAULT.solve(call, stock, strike, maturity, interest, price);
+			final double newtonError = Math.abs(newton-vola);
+			if(!(newtonError < 1e-4)) newtonFailures++;
+			if(newtonError > newtonWorst) newtonWorst = newtonError;
+
+			// a guess at the top of the range makes the first Newton step leave the bracket, Brent takes over
+			final double brent = ImpliedVolatility.DEFAULT.solve(call, stock, strike, maturity, interest, price, 99);
+			final double brentError = Math.abs(brent-vola);
+			if(!(brentError < 1e-4)) brentFailures++;
+			if(brentError > brentWorst) brentWorst = brentError;
+		}
+		final double ms = (System.nanoTime()-start)/1e6;
+		System.out.printf("%d cases, %d skipped, %.0f ms\n", CASES, skipped, ms);
+		System.out.printf("Newton\tfailures %d\tworst error %.3e\n", newtonFailures, newtonWorst);
+		System.out.printf("Brent\tfailures %d\tworst error %.3e\n", brentFailures, brentWorst);
+
+		final boolean bounds = Double.isNaN(ImpliedVolatility.DEFAULT.solve(true, 100, 100, 1, 0, 100))
+				&& Double.isNaN(ImpliedVolatility.DEFAULT.solve(false, 100, 100, 1, 0, 0))
+				&& Double.isNaN(ImpliedVolatility.DEFAULT.solve(true, 100, 50, 1, 0, 49));
+		if(!bounds) System.out.println("FAILED prices outside the no arbitrage bounds");
+		System.out.println(newtonFailures == 0 && brentFailures == 0 && bounds ? "ImpliedVolatilityTest OK" : "ImpliedVolatilityTest FAILED");
+	}
+}